@@ -1,43 +1,65 @@
 package com.hollingsworth.schematic.api;
 
+import com.hollingsworth.schematic.Constants;
 import com.hollingsworth.schematic.api.blockprints.ApiError;
 import com.hollingsworth.schematic.api.blockprints.ApiResponse;
 import com.hollingsworth.schematic.api.blockprints.BlockprintsApi;
-import com.hollingsworth.schematic.api.blockprints.GoogleCloudStorage;
+import com.hollingsworth.schematic.api.blockprints.UploadScheduler;
+import com.hollingsworth.schematic.api.blockprints.UploadSession;
 import com.hollingsworth.schematic.common.util.SchematicExport;
+import com.hollingsworth.schematic.export.LytSize;
 import com.hollingsworth.schematic.export.PerspectivePreset;
+import com.hollingsworth.schematic.export.PngEncoder;
 import com.hollingsworth.schematic.export.Template;
 import com.hollingsworth.schematic.export.WrappedScene;
+import net.minecraft.Util;
 import net.minecraft.core.BlockPos;
 import net.minecraft.network.chat.Component;
 import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplate;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 
 public class SceneExporter {
     public static final String IMAGE_FOLDER = "./schematics/blockprints/images/";
     public static final String STRUCTURE_FOLDER = "./schematics/";
+    // Keep a copy of the uploaded images in IMAGE_FOLDER, written in the background. A resumed upload reads them,
+    // so without them an interrupted upload is not picked up again
+    public static boolean saveImagesLocally = true;
+    // Deflate level for the uploaded images, they are kept so they are worth encoding small
+    public static int galleryCompression = PngEncoder.SMALL;
 
     public static final int GAMESCENE_PLACEHOLDER_SCALE = 2;
     public WrappedScene scene;
     public StructureTemplate structureTemplate;
+    private final UploadScheduler uploadScheduler = new UploadScheduler();
 
     public SceneExporter(WrappedScene wrappedScene, StructureTemplate structureTemplate) {
         this.scene = wrappedScene;
         this.structureTemplate = structureTemplate;
     }
 
-    public List<WrappedScene.ImageExport> getImages() {
-        List<WrappedScene.ImageExport> images = new ArrayList<>();
-        images.add(scene.exportPreviewPng());
-        images.add(scene.exportPreviewPng());
+    /**
+     * Renders every image on the calling thread, completing once they have all been encoded in the background.
+     */
+    public CompletableFuture<List<WrappedScene.ImageExport>> getImages() {
+        LytSize previewSize = scene.getSizeForPreview();
+        if (previewSize == null) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        List<WrappedScene.ExportView> views = new ArrayList<>();
+        // The preview and the first gallery image are the same view, the batch renders it once for both
+        views.add(new WrappedScene.ExportView(null, previewSize));
+        views.add(new WrappedScene.ExportView(null, previewSize));
         PerspectivePreset[] perspectivePresets = PerspectivePreset.values();
         // check which preset the scene is closest to
         float currentYaw = scene.scene.getCameraSettings().getRotationY();
@@ -57,34 +79,26 @@ public class SceneExporter {
         }
         for (PerspectivePreset preset : perspectivePresets) {
             if (preset != closest) {
-                scene.scene.getCameraSettings().setPerspectivePreset(preset);
-                scene.scene.getCameraSettings().setRotationCenter(scene.scene.getWorldCenter());
-                scene.scene.getCameraSettings().setZoom(1.0f);
-                scene.scene.centerScene();
-
-                images.add(scene.exportPreviewPng());
+                views.add(new WrappedScene.ExportView(preset, previewSize));
             }
         }
-        return images;
+        return scene.exportBatch(views, galleryCompression);
     }
 
     public ApiResponse<String> writeAndUpload(List<WrappedScene.ImageExport> images, String name, String description, boolean makePublic, BlockPos start, BlockPos end) {
         String finalExportName = sanitize(name);
         try {
-            Files.createDirectories(Path.of(IMAGE_FOLDER));
-            int count = 0;
+            // Images are uploaded straight from memory, the local copies only matter to a resumed upload
+            Path previewPath = Paths.get(IMAGE_FOLDER + finalExportName + "_preview.png");
             List<Path> imageFiles = new ArrayList<>();
             // Skip the first image
-            Path previewPath = Paths.get(IMAGE_FOLDER + finalExportName + "_preview.png");
-            Files.write(previewPath, images.get(0).image());
             List<WrappedScene.ImageExport> galleryImages = images.subList(1, images.size());
-
-            for (WrappedScene.ImageExport image : galleryImages) {
-                Path path = Paths.get(IMAGE_FOLDER + finalExportName + count + ".png");
-                Files.write(path, image.image());
-                imageFiles.add(path);
-                count++;
+            for (int i = 0; i < galleryImages.size(); i++) {
+                imageFiles.add(Paths.get(IMAGE_FOLDER + finalExportName + i + ".png"));
             }
+            List<Path> allPaths = new ArrayList<>();
+            allPaths.add(previewPath);
+            allPaths.addAll(imageFiles);
             var template = new Template(name, start, end);
             var uploadResponse = BlockprintsApi.getInstance().upload().postUpload(name, description, template.toJson(), makePublic);
             if (!uploadResponse.wasSuccessful() || uploadResponse.response == null) {
@@ -98,30 +112,79 @@ public class SceneExporter {
                 return ApiResponse.error(Component.literal("Could not save schematic locally"));
             }
 
-            var preview = response.signedPreviewImage;
-            var schematic = response.signedSchematic;
-            var previewSuccess = GoogleCloudStorage.uploadFileToGCS(URI.create(preview).toURL(), previewPath, "image/png", response.imageFileSize);
-            var structureSuccess = GoogleCloudStorage.uploadFileToGCS(URI.create(schematic).toURL(), result.file(), "application/octet-stream", response.schematicFileSize);
-            if (!previewSuccess || !structureSuccess) {
-                return ApiResponse.error(Component.literal("Could not upload to GCS"));
-            }
+            List<UploadScheduler.UploadJob> uploads = new ArrayList<>();
+            uploads.add(new UploadScheduler.UploadJob(URI.create(response.signedPreviewImage), previewPath, images.get(0).image(), "image/png", response.imageFileSize));
+            uploads.add(new UploadScheduler.UploadJob(URI.create(response.signedSchematic), result.file(), "application/octet-stream", response.schematicFileSize));
             for (int i = 0; i < response.signedImages.length; i++) {
                 // Guard against server changes
                 if (i >= imageFiles.size()) {
                     break;
                 }
-                if (!GoogleCloudStorage.uploadFileToGCS(URI.create(response.signedImages[i]).toURL(), imageFiles.get(i), "image/png", response.imageFileSize)) {
-                    return ApiResponse.error(Component.literal("Could not upload to GCS"));
+                uploads.add(new UploadScheduler.UploadJob(URI.create(response.signedImages[i]), imageFiles.get(i), galleryImages.get(i).image(), "image/png", response.imageFileSize));
+            }
+            UploadSession session = UploadSession.create(response.id, uploads);
+            // The upload starts from memory straight away. The session points at the image files, so it is only kept on
+            // disk, and resumed the next time the game starts, once they are written
+            CompletableFuture<Void> persisted = saveImagesLocally ? writeImagesAsync(allPaths, images).handle((unused, err) -> {
+                if (err != null) {
+                    Constants.LOG.error("Could not save exported images", err);
+                    return null;
+                }
+                try {
+                    session.persist();
+                } catch (IOException e) {
+                    Constants.LOG.error("Could not save upload session " + response.id, e);
+                }
+                return null;
+            }) : CompletableFuture.completedFuture(null);
+            try {
+                uploadScheduler.uploadAll(session).join();
+            } catch (CompletionException e) {
+                Constants.LOG.error("Could not upload to GCS", e.getCause());
+                persisted.join();
+                if (session.isPersisted()) {
+                    return ApiResponse.error(Component.literal("Could not upload to GCS, it will be retried the next time you play"));
                 }
+                return ApiResponse.error(Component.literal("Could not upload to GCS"));
             }
             BlockprintsApi.getInstance().upload().postDoneUploading(response.id);
+            session.delete();
             return ApiResponse.success(response.id);
-        } catch (IOException | InterruptedException | ApiError e) {
+        } catch (IOException | ApiError e) {
             e.printStackTrace();
             return ApiResponse.connectionError();
         }
     }
 
+    //Each image is written in its own task, so the copies land in parallel
+    private static CompletableFuture<Void> writeImagesAsync(List<Path> paths, List<WrappedScene.ImageExport> images) {
+        try {
+            Files.createDirectories(Path.of(IMAGE_FOLDER));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<?>[] writes = new CompletableFuture<?>[paths.size()];
+        for (int i = 0; i < paths.size(); i++) {
+            Path path = paths.get(i);
+            byte[] image = images.get(i).image();
+            writes[i] = CompletableFuture.runAsync(() -> {
+                try {
+                    Files.write(path, image);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, Util.ioPool());
+        }
+        return CompletableFuture.allOf(writes);
+    }
+
+    /**
+     * @return Fraction of the file bytes uploaded so far by {@link #writeAndUpload}.
+     */
+    public float getUploadProgress() {
+        return uploadScheduler.getProgress();
+    }
+
     // Convert a string into lowercase, remove all non-alphanumeric characters, and replace all spaces with underscores
     public static String sanitize(String str) {
         return str.toLowerCase().replaceAll("[^a-z0-9]", "_").replaceAll(" ", "_");
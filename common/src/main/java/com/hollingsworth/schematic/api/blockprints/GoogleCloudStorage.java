@@ -6,16 +6,20 @@ import com.hollingsworth.schematic.api.SceneExporter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
-import java.net.URL;
 import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 
 public class GoogleCloudStorage {
+    //One pooled client for every upload, so connections to GCS are reused and multiplexed over HTTP/2
+    public static final HttpClient CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Duration.ofSeconds(30))
+            .build();
 
     public static String getBucketUrl() {
         if (Constants.isDev) {
@@ -24,23 +28,6 @@ public class GoogleCloudStorage {
         return "https://storage.googleapis.com/blockprints-prod/";
     }
 
-    //TODO: convert to api response
-    public static boolean uploadFileToGCS(URL signedUrl, Path filePath, String contentType, int fileSize) throws IOException, InterruptedException {
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(signedUrl.toString()))
-                .header("Content-Type", contentType)
-                .header("x-goog-content-length-range", "0," + fileSize)
-                .PUT(HttpRequest.BodyPublishers.ofFile(filePath))
-                .build();
-
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-        if (response.statusCode() != 200) {
-            System.out.println(response.body());
-        }
-        return response.statusCode() == 200;
-    }
-
     public static ApiResponse<byte[]> downloadImage(String gcsPath) {
         return GoogleCloudStorage.downloadRawUrl(URI.create(getBucketUrl() + gcsPath));
     }
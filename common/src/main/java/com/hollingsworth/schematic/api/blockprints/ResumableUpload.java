@@ -0,0 +1,117 @@
+package com.hollingsworth.schematic.api.blockprints;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Client side of GCS resumable uploads. A session is opened once through the signed url, after which the file is sent
+ * to the session uri in {@link #chunkSize} pieces. GCS keeps what it has received, so a dropped connection or a
+ * restart only costs the chunk that was in flight.
+ */
+public class ResumableUpload {
+    public static boolean enabled = true;
+    //GCS requires every chunk but the last to be a multiple of 256 KiB
+    public static int chunkSize = 32 * 256 * 1024;
+    //Returned instead of an offset once GCS has the whole file
+    public static final long COMPLETE = -1;
+
+    //Must not follow redirects: GCS answers every partial chunk with 308 Resume Incomplete, which carries no Location
+    private static final HttpClient SESSION_CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .connectTimeout(Duration.ofSeconds(30))
+            .build();
+
+    /**
+     * Files that fit in one chunk go up in a single PUT, a session would only add a round trip.
+     */
+    public static boolean isResumable(long fileSize) {
+        return enabled && fileSize > chunkSize;
+    }
+
+    /**
+     * Opens a session through the signed url, completing with the uri the chunks are sent to.
+     */
+    public static CompletableFuture<URI> start(UploadScheduler.UploadJob job) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(job.signedUrl())
+                .header("Content-Type", job.contentType())
+                .header("x-goog-content-length-range", "0," + job.maxFileSize())
+                .header("x-goog-resumable", "start")
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        return SESSION_CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(response -> {
+            String location = response.headers().firstValue("Location").orElse(null);
+            if (!RequestUtil.responseSuccessful(response.statusCode()) || location == null) {
+                throw new UploadScheduler.StatusException(response.statusCode(), response.body());
+            }
+            return URI.create(location);
+        });
+    }
+
+    /**
+     * Sends the chunk starting at offset, completing with the offset GCS wants next or {@link #COMPLETE}.
+     */
+    public static CompletableFuture<Long> sendChunk(URI session, Path file, long offset, long fileSize) {
+        int length = (int) Math.min(chunkSize, fileSize - offset);
+        byte[] chunk = new byte[length];
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException(file + " is shorter than when the upload started");
+                }
+            }
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(session)
+                .header("Content-Range", "bytes " + offset + "-" + (offset + length - 1) + "/" + fileSize)
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(chunk))
+                .build();
+        return SESSION_CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(ResumableUpload::nextOffset);
+    }
+
+    /**
+     * Asks GCS how much of the file it already has, for picking a session back up after a failure or restart.
+     */
+    public static CompletableFuture<Long> queryOffset(URI session, long fileSize) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(session)
+                .header("Content-Range", "bytes */" + fileSize)
+                .PUT(HttpRequest.BodyPublishers.noBody())
+                .build();
+        return SESSION_CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(ResumableUpload::nextOffset);
+    }
+
+    private static long nextOffset(HttpResponse<String> response) {
+        int status = response.statusCode();
+        if (status == 200 || status == 201) {
+            return COMPLETE;
+        }
+        if (status != 308) {
+            throw new UploadScheduler.StatusException(status, response.body());
+        }
+        //Range is the inclusive span GCS has persisted, e.g. "bytes=0-8388607". Without one it has nothing yet
+        String range = response.headers().firstValue("Range").orElse(null);
+        if (range == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(range.substring(range.indexOf('-') + 1).trim()) + 1;
+        } catch (NumberFormatException e) {
+            throw new UncheckedIOException(new IOException("Unexpected range " + range));
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.hollingsworth.schematic.api.blockprints;
+
+import com.hollingsworth.schematic.Constants;
+
+import javax.annotation.Nullable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Uploads a batch of files to signed GCS urls at the same time over the shared client in {@link GoogleCloudStorage}.
+ * At most {@link #maxParallel} uploads are in flight, transient failures are retried with exponential backoff, and the
+ * bytes handed to the connection are counted so callers can show progress. Files larger than one chunk go through a
+ * {@link ResumableUpload} session, and progress is recorded in the {@link UploadSession} so it survives a restart.
+ */
+public class UploadScheduler {
+    public static int maxParallel = 4;
+    public static int maxRetries = 3;
+    public static long retryDelayMillis = 500;
+
+    private final Queue<Integer> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private volatile boolean failed;
+
+    /**
+     * @param data Bytes to send instead of reading the file, which holds the same bytes for a resumed upload
+     */
+    public record UploadJob(URI signedUrl, Path file, @Nullable byte[] data, String contentType, int maxFileSize) {
+        public UploadJob(URI signedUrl, Path file, String contentType, int maxFileSize) {
+            this(signedUrl, file, null, contentType, maxFileSize);
+        }
+    }
+
+    /**
+     * Starts every upload the session has not finished yet, completing once all succeeded or exceptionally with the
+     * first one that could not be uploaded.
+     */
+    public CompletableFuture<Void> uploadAll(UploadSession session) {
+        List<UploadJob> jobs = session.getJobs();
+        for (int i = 0; i < jobs.size(); i++) {
+            long size = session.getFileSize(i);
+            totalBytes.addAndGet(size);
+            if (session.isDone(i)) {
+                sentBytes.addAndGet(size);
+            } else {
+                pending.add(i);
+            }
+        }
+        int lanes = Math.max(1, Math.min(maxParallel, pending.size()));
+        CompletableFuture<?>[] running = new CompletableFuture<?>[lanes];
+        for (int i = 0; i < lanes; i++) {
+            running[i] = runNext(session);
+        }
+        return CompletableFuture.allOf(running);
+    }
+
+    /**
+     * @return Fraction of all bytes sent so far, or 0 before anything was queued.
+     */
+    public float getProgress() {
+        long total = totalBytes.get();
+        return total == 0 ? 0f : Math.min(1f, sentBytes.get() / (float) total);
+    }
+
+    //Each lane takes the next job once its current one is done, so the pool never holds more than maxParallel requests
+    private CompletableFuture<Void> runNext(UploadSession session) {
+        Integer index = pending.poll();
+        if (index == null || failed) {
+            return CompletableFuture.completedFuture(null);
+        }
+        UploadJob job = session.getJobs().get(index);
+        long size = session.getFileSize(index);
+        //In memory bodies are small images, only files are worth a session
+        CompletableFuture<Void> upload = job.data() == null && ResumableUpload.isResumable(size) ? uploadResumable(session, index, size) : put(job, 0);
+        return upload.thenRun(() -> session.markDone(index)).thenCompose(unused -> runNext(session));
+    }
+
+    private CompletableFuture<Void> put(UploadJob job, int attempt) {
+        AtomicLong attemptBytes = new AtomicLong();
+        HttpRequest.BodyPublisher body;
+        try {
+            body = job.data() != null ? HttpRequest.BodyPublishers.ofByteArray(job.data()) : HttpRequest.BodyPublishers.ofFile(job.file());
+        } catch (FileNotFoundException e) {
+            failed = true;
+            return CompletableFuture.failedFuture(e);
+        }
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(job.signedUrl())
+                .header("Content-Type", job.contentType())
+                .header("x-goog-content-length-range", "0," + job.maxFileSize())
+                .PUT(new CountingBodyPublisher(body, attemptBytes))
+                .build();
+        return GoogleCloudStorage.CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofString()).handle((response, err) -> {
+            if (err == null && RequestUtil.responseSuccessful(response.statusCode())) {
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            //Whatever this attempt sent will be sent again
+            sentBytes.addAndGet(-attemptBytes.get());
+            Throwable cause = err != null ? err : new StatusException(response.statusCode(), response.body());
+            if (shouldRetry(cause, attempt)) {
+                logRetry(job, cause);
+                return backoff(attempt).thenCompose(unused -> put(job, attempt + 1));
+            }
+            return this.<Void>fail(job, cause);
+        }).thenCompose(future -> future);
+    }
+
+    private CompletableFuture<Void> uploadResumable(UploadSession session, int index, long size) {
+        UploadJob job = session.getJobs().get(index);
+        URI existing = session.getSessionUri(index);
+        if (existing != null) {
+            //Picked up after a restart, GCS decides where to carry on from
+            return resume(job, existing, 0, size, 0);
+        }
+        return startSession(job, 0).handle((sessionUri, err) -> {
+            if (err == null) {
+                session.setSessionUri(index, sessionUri);
+                return sendChunks(job, sessionUri, 0, size, 0);
+            }
+            //A url signed for a plain PUT can't open a session, which is worth a log line but not a failed upload
+            if (unwrap(err) instanceof StatusException status && status.status / 100 == 4) {
+                Constants.LOG.warn("Could not open a resumable upload for " + job.file().getFileName() + " (" + status.status + "), uploading it in one go");
+                return put(job, 0);
+            }
+            return this.<Void>fail(job, err);
+        }).thenCompose(future -> future);
+    }
+
+    private CompletableFuture<URI> startSession(UploadJob job, int attempt) {
+        return ResumableUpload.start(job).handle((sessionUri, err) -> {
+            if (err == null) {
+                return CompletableFuture.completedFuture(sessionUri);
+            }
+            if (shouldRetry(err, attempt)) {
+                logRetry(job, err);
+                return backoff(attempt).thenCompose(unused -> startSession(job, attempt + 1));
+            }
+            return CompletableFuture.<URI>failedFuture(unwrap(err));
+        }).thenCompose(future -> future);
+    }
+
+    private CompletableFuture<Void> sendChunks(UploadJob job, URI sessionUri, long offset, long size, int failures) {
+        if (failed) {
+            return CompletableFuture.failedFuture(new IOException("Upload cancelled"));
+        }
+        return ResumableUpload.sendChunk(sessionUri, job.file(), offset, size).handle((next, err) -> {
+            if (err == null) {
+                return advance(job, sessionUri, offset, next, size);
+            }
+            if (shouldRetry(err, failures)) {
+                logRetry(job, err);
+                //Part of the chunk may have landed, so ask GCS where to carry on from rather than resending it blindly
+                return backoff(failures).thenCompose(unused -> resume(job, sessionUri, offset, size, failures + 1));
+            }
+            return this.<Void>fail(job, err);
+        }).thenCompose(future -> future);
+    }
+
+    private CompletableFuture<Void> resume(UploadJob job, URI sessionUri, long offset, long size, int failures) {
+        return ResumableUpload.queryOffset(sessionUri, size).handle((next, err) -> {
+            if (err == null) {
+                return advance(job, sessionUri, offset, next, size);
+            }
+            if (shouldRetry(err, failures)) {
+                logRetry(job, err);
+                return backoff(failures).thenCompose(unused -> resume(job, sessionUri, offset, size, failures + 1));
+            }
+            return this.<Void>fail(job, err);
+        }).thenCompose(future -> future);
+    }
+
+    //Progress only moves once GCS has confirmed the bytes, so it never has to be taken back for chunked uploads
+    private CompletableFuture<Void> advance(UploadJob job, URI sessionUri, long offset, long next, long size) {
+        long confirmed = next == ResumableUpload.COMPLETE ? size : next;
+        sentBytes.addAndGet(confirmed - offset);
+        if (next == ResumableUpload.COMPLETE) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return sendChunks(job, sessionUri, next, size, 0);
+    }
+
+    private boolean shouldRetry(Throwable err, int attempt) {
+        if (attempt >= maxRetries || failed) {
+            return false;
+        }
+        if (unwrap(err) instanceof StatusException status) {
+            return status.status == 408 || status.status == 429 || status.status >= 500;
+        }
+        return true;
+    }
+
+    private <T> CompletableFuture<T> fail(UploadJob job, Throwable err) {
+        failed = true;
+        Throwable cause = unwrap(err);
+        if (cause instanceof StatusException status) {
+            Constants.LOG.error("Upload of " + job.file().getFileName() + " rejected: " + status.body);
+        }
+        return CompletableFuture.failedFuture(cause);
+    }
+
+    private static void logRetry(UploadJob job, Throwable err) {
+        Throwable cause = unwrap(err);
+        String reason = cause instanceof StatusException status ? String.valueOf(status.status) : cause.getMessage();
+        Constants.LOG.warn("Upload of " + job.file().getFileName() + " failed (" + reason + "), retrying");
+    }
+
+    private static CompletableFuture<Void> backoff(int attempt) {
+        long delay = retryDelayMillis * (1L << attempt) + ThreadLocalRandom.current().nextLong(retryDelayMillis);
+        return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS));
+    }
+
+    private static Throwable unwrap(Throwable err) {
+        return err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+    }
+
+    /**
+     * A response GCS sent back with a status that was not a success.
+     */
+    public static class StatusException extends RuntimeException {
+        public final int status;
+        public final String body;
+
+        public StatusException(int status, String body) {
+            super("Upload failed with status " + status);
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    //Counts the bytes as the client pulls them from the file, which tracks what has gone out closely enough for a progress bar
+    private class CountingBodyPublisher implements HttpRequest.BodyPublisher {
+        private final HttpRequest.BodyPublisher wrapped;
+        private final AtomicLong attemptBytes;
+
+        private CountingBodyPublisher(HttpRequest.BodyPublisher wrapped, AtomicLong attemptBytes) {
+            this.wrapped = wrapped;
+            this.attemptBytes = attemptBytes;
+        }
+
+        @Override
+        public long contentLength() {
+            return wrapped.contentLength();
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            wrapped.subscribe(new Flow.Subscriber<>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscriber.onSubscribe(subscription);
+                }
+
+                @Override
+                public void onNext(ByteBuffer item) {
+                    int bytes = item.remaining();
+                    attemptBytes.addAndGet(bytes);
+                    sentBytes.addAndGet(bytes);
+                    subscriber.onNext(item);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    subscriber.onError(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    subscriber.onComplete();
+                }
+            });
+        }
+    }
+}
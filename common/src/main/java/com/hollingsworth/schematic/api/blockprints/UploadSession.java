@@ -0,0 +1,297 @@
+package com.hollingsworth.schematic.api.blockprints;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.hollingsworth.schematic.Constants;
+import com.hollingsworth.schematic.common.util.ClientUtil;
+import net.minecraft.ChatFormatting;
+import net.minecraft.Util;
+import net.minecraft.client.Minecraft;
+import net.minecraft.network.chat.ClickEvent;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.Style;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+/**
+ * Everything needed to finish uploading a build, kept in {@link #SESSION_FOLDER} until the server has been told the
+ * upload is done. If the game closes or the connection drops part way, the next world joined picks it back up: files
+ * that made it are skipped and resumable sessions carry on from the last chunk GCS confirmed.
+ */
+public class UploadSession {
+    public static final String SESSION_FOLDER = "./schematics/blockprints/uploads/";
+    //Times an interrupted upload is picked up again before it is given up on
+    public static int maxResumes = 3;
+    private static boolean resumeChecked;
+
+    private final String id;
+    private final List<UploadScheduler.UploadJob> jobs;
+    private final long[] fileSizes;
+    private final long[] lastModified;
+    private final URI[] sessionUris;
+    private final boolean[] done;
+    private int resumes;
+    //Only written to disk once persist() has been called, and never again after delete()
+    private boolean persisted;
+    private boolean deleted;
+
+    private UploadSession(String id, List<UploadScheduler.UploadJob> jobs) {
+        this.id = id;
+        this.jobs = jobs;
+        this.fileSizes = new long[jobs.size()];
+        this.lastModified = new long[jobs.size()];
+        this.sessionUris = new URI[jobs.size()];
+        this.done = new boolean[jobs.size()];
+    }
+
+    /**
+     * Starts tracking a new upload in memory. Nothing is written until {@link #persist}, so the upload can start while
+     * the files its in memory jobs would resume from are still being written.
+     */
+    public static UploadSession create(String id, List<UploadScheduler.UploadJob> jobs) throws IOException {
+        UploadSession session = new UploadSession(id, jobs);
+        for (int i = 0; i < jobs.size(); i++) {
+            UploadScheduler.UploadJob job = jobs.get(i);
+            if (job.data() != null) {
+                //Filled in by persist once the file is written
+                session.fileSizes[i] = job.data().length;
+                session.lastModified[i] = -1;
+            } else {
+                session.fileSizes[i] = Files.size(job.file());
+                session.lastModified[i] = Files.getLastModifiedTime(job.file()).toMillis();
+            }
+        }
+        return session;
+    }
+
+    /**
+     * Keeps the session on disk so it is resumed after a restart. Every job's file has to exist by now.
+     * Does nothing if the upload already finished.
+     */
+    public synchronized void persist() throws IOException {
+        if (deleted) {
+            return;
+        }
+        for (int i = 0; i < jobs.size(); i++) {
+            if (lastModified[i] != -1) continue;
+            Path file = jobs.get(i).file();
+            if (Files.size(file) != fileSizes[i]) {
+                throw new IOException(file + " does not hold the bytes being uploaded");
+            }
+            lastModified[i] = Files.getLastModifiedTime(file).toMillis();
+        }
+        persisted = true;
+        save();
+    }
+
+    /**
+     * @return True if the session is on disk, so a failed upload will be picked up again.
+     */
+    public synchronized boolean isPersisted() {
+        return persisted;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public List<UploadScheduler.UploadJob> getJobs() {
+        return jobs;
+    }
+
+    public long getFileSize(int index) {
+        return fileSizes[index];
+    }
+
+    public synchronized boolean isDone(int index) {
+        return done[index];
+    }
+
+    public synchronized void markDone(int index) {
+        done[index] = true;
+        save();
+    }
+
+    @Nullable
+    public synchronized URI getSessionUri(int index) {
+        return sessionUris[index];
+    }
+
+    public synchronized void setSessionUri(int index, URI sessionUri) {
+        sessionUris[index] = sessionUri;
+        save();
+    }
+
+    /**
+     * Forgets the upload once the server knows it is complete.
+     */
+    public synchronized void delete() {
+        deleted = true;
+        try {
+            Files.deleteIfExists(getPath(id));
+        } catch (IOException e) {
+            Constants.LOG.error("Could not delete upload session " + id, e);
+        }
+    }
+
+    //Written to a temp file and moved over, so a crash mid write never leaves a session that can't be read
+    private synchronized void save() {
+        if (!persisted) {
+            return;
+        }
+        try {
+            Path path = getPath(id);
+            Files.createDirectories(path.getParent());
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.writeString(temp, toJson().toString());
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Constants.LOG.error("Could not save upload session " + id, e);
+        }
+    }
+
+    private JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("id", id);
+        json.addProperty("resumes", resumes);
+        JsonArray files = new JsonArray();
+        for (int i = 0; i < jobs.size(); i++) {
+            UploadScheduler.UploadJob job = jobs.get(i);
+            JsonObject file = new JsonObject();
+            file.addProperty("signedUrl", job.signedUrl().toString());
+            file.addProperty("file", job.file().toString());
+            file.addProperty("contentType", job.contentType());
+            file.addProperty("maxFileSize", job.maxFileSize());
+            file.addProperty("size", fileSizes[i]);
+            file.addProperty("lastModified", lastModified[i]);
+            file.addProperty("done", done[i]);
+            if (sessionUris[i] != null) {
+                file.addProperty("sessionUri", sessionUris[i].toString());
+            }
+            files.add(file);
+        }
+        json.add("files", files);
+        return json;
+    }
+
+    private static UploadSession fromJson(JsonObject json) {
+        List<UploadScheduler.UploadJob> jobs = new ArrayList<>();
+        JsonArray files = json.getAsJsonArray("files");
+        for (JsonElement element : files) {
+            JsonObject file = element.getAsJsonObject();
+            jobs.add(new UploadScheduler.UploadJob(URI.create(file.get("signedUrl").getAsString()), Paths.get(file.get("file").getAsString()),
+                    file.get("contentType").getAsString(), file.get("maxFileSize").getAsInt()));
+        }
+        UploadSession session = new UploadSession(json.get("id").getAsString(), jobs);
+        session.persisted = true;
+        session.resumes = json.get("resumes").getAsInt();
+        for (int i = 0; i < files.size(); i++) {
+            JsonObject file = files.get(i).getAsJsonObject();
+            session.fileSizes[i] = file.get("size").getAsLong();
+            session.lastModified[i] = file.get("lastModified").getAsLong();
+            session.done[i] = file.get("done").getAsBoolean();
+            if (file.has("sessionUri")) {
+                session.sessionUris[i] = URI.create(file.get("sessionUri").getAsString());
+            }
+        }
+        return session;
+    }
+
+    //A file that changed since the upload started would be stitched together from two versions
+    private boolean filesUnchanged() {
+        for (int i = 0; i < jobs.size(); i++) {
+            if (done[i]) continue;
+            Path file = jobs.get(i).file();
+            try {
+                if (Files.size(file) != fileSizes[i] || Files.getLastModifiedTime(file).toMillis() != lastModified[i]) {
+                    return false;
+                }
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Path getPath(String id) {
+        return Paths.get(SESSION_FOLDER, id + ".json");
+    }
+
+    /**
+     * Looks for unfinished uploads once per game, as soon as a player is around to authenticate them with.
+     */
+    public static void tick() {
+        if (resumeChecked || Minecraft.getInstance().player == null) {
+            return;
+        }
+        resumeChecked = true;
+        CompletableFuture.runAsync(UploadSession::resumeAll, Util.backgroundExecutor());
+    }
+
+    private static void resumeAll() {
+        Path folder = Paths.get(SESSION_FOLDER);
+        if (!Files.isDirectory(folder)) {
+            return;
+        }
+        List<Path> saved;
+        try (Stream<Path> files = Files.list(folder)) {
+            saved = files.filter(path -> path.toString().endsWith(".json")).toList();
+        } catch (IOException e) {
+            Constants.LOG.error("Could not list upload sessions", e);
+            return;
+        }
+        for (Path path : saved) {
+            UploadSession session;
+            try {
+                session = fromJson(JsonParser.parseString(Files.readString(path)).getAsJsonObject());
+            } catch (Exception e) {
+                Constants.LOG.error("Dropping unreadable upload session " + path, e);
+                deleteQuietly(path);
+                continue;
+            }
+            if (session.resumes >= maxResumes || !session.filesUnchanged()) {
+                Constants.LOG.warn("Giving up on upload " + session.id);
+                session.delete();
+                continue;
+            }
+            session.resumes++;
+            session.save();
+            resume(session);
+        }
+    }
+
+    private static void resume(UploadSession session) {
+        Constants.LOG.info("Resuming upload " + session.id);
+        try {
+            new UploadScheduler().uploadAll(session).join();
+            BlockprintsApi.getInstance().upload().postDoneUploading(session.id);
+        } catch (CompletionException | ApiError e) {
+            Constants.LOG.error("Could not resume upload " + session.id, e);
+            return;
+        }
+        session.delete();
+        String url = "https://blockprints.io/schematic/" + session.id;
+        Minecraft.getInstance().execute(() -> ClientUtil.sendMessage(Component.translatable("blockprints.upload_complete",
+                Component.literal(url).withStyle(Style.EMPTY.withColor(ChatFormatting.BLUE).withClickEvent(new ClickEvent(ClickEvent.Action.OPEN_URL, url))))));
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -4,7 +4,7 @@ import com.hollingsworth.schematic.ClientConstants;
 import com.hollingsworth.schematic.Constants;
 import com.hollingsworth.schematic.client.gui.GuiUtils;
 import com.hollingsworth.schematic.client.gui.UploadPreviewScreen;
-import com.hollingsworth.schematic.common.util.SchematicExport;
+import com.hollingsworth.schematic.common.util.StructureCapture;
 import com.mojang.blaze3d.platform.Window;
 import com.mojang.blaze3d.vertex.PoseStack;
 import com.mojang.blaze3d.vertex.VertexConsumer;
@@ -18,12 +18,13 @@ import net.minecraft.network.chat.Component;
 import net.minecraft.world.InteractionHand;
 import net.minecraft.world.item.context.BlockPlaceContext;
 import net.minecraft.world.item.context.UseOnContext;
-import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplate;
 import net.minecraft.world.phys.AABB;
 import net.minecraft.world.phys.BlockHitResult;
 import net.minecraft.world.phys.HitResult;
 import net.minecraft.world.phys.Vec3;
 
+import java.util.concurrent.CancellationException;
+
 import static com.hollingsworth.schematic.client.ClientData.*;
 import static com.hollingsworth.schematic.client.RaycastHelper.rayTraceRange;
 
@@ -32,6 +33,8 @@ public class AreaCaptureHandler {
     public static BlockPos firstTarget;
     public static BlockPos secondTarget;
     public static boolean showBoundary;
+    //Capture of the confirmed area while it is still being read from the world
+    public static StructureCapture capture;
 
     public static void startCapture(){
         AreaCaptureHandler.showBoundary = true;
@@ -51,18 +54,54 @@ public class AreaCaptureHandler {
         }
         AreaCaptureHandler.showBoundary = false;
         if (AreaCaptureHandler.firstTarget != null && AreaCaptureHandler.secondTarget != null) {
-            StructureTemplate structure = SchematicExport.getStructure(Minecraft.getInstance().level, AreaCaptureHandler.firstTarget, AreaCaptureHandler.secondTarget);
-            Minecraft.getInstance().setScreen(new UploadPreviewScreen(structure, AreaCaptureHandler.firstTarget, AreaCaptureHandler.secondTarget));
+            BlockPos first = AreaCaptureHandler.firstTarget;
+            BlockPos second = AreaCaptureHandler.secondTarget;
+            if (capture != null) {
+                capture.cancel();
+            }
+            StructureCapture started = StructureCapture.start(Minecraft.getInstance().level, first, second);
+            capture = started;
+            started.getResult().whenCompleteAsync((structure, err) -> {
+                if (capture == started) {
+                    capture = null;
+                }
+                if (err != null && !(err instanceof CancellationException)) {
+                    Constants.LOG.error("Failed to capture area", err);
+                }
+                if (structure != null) {
+                    Minecraft.getInstance().setScreen(new UploadPreviewScreen(structure, first, second));
+                }
+            }, Minecraft.getInstance());
         }
     }
 
     public static void onCancelHit() {
+        if (capture != null) {
+            capture.cancel();
+            capture = null;
+            return;
+        }
         if (!AreaCaptureHandler.showBoundary) {
             return;
         }
         cancelCapture();
     }
 
+    /**
+     * Advances a running capture by one time slice, dropping it if the player left the level it was reading.
+     */
+    public static void tick() {
+        if (capture == null) {
+            return;
+        }
+        if (capture.getLevel() != Minecraft.getInstance().level) {
+            capture.cancel();
+            capture = null;
+            return;
+        }
+        capture.tick();
+    }
+
     public static BlockPos selectedPos = null;
 
     public static void renderBoundary(PoseStack poseStack) {
@@ -144,11 +183,20 @@ public class AreaCaptureHandler {
     }
 
     public static void renderBoundaryUI(GuiGraphics graphics, Window window) {
-        if (!showBoundary)
-            return;
-        float screenY = window.getGuiScaledHeight() / 2f;
         float screenX = window.getGuiScaledWidth() / 2f;
         float instructionY = window.getGuiScaledHeight() - 42;
+        if (capture != null) {
+            int percent = (int) (capture.getProgress() * 100);
+            graphics.pose().pushPose();
+            graphics.pose().translate(screenX, instructionY, 0);
+            GuiUtils.drawCenteredOutlinedText(Minecraft.getInstance().font, graphics, Component.translatable(Constants.MOD_ID + ".capturing", percent).getVisualOrderText(), 0, 0);
+            graphics.pose().translate(0, 10, 0);
+            GuiUtils.drawCenteredOutlinedText(Minecraft.getInstance().font, graphics, Component.translatable(Constants.MOD_ID + ".cancel_selection", CANCEL.getTranslatedKeyMessage()).getVisualOrderText(), 0, 0);
+            graphics.pose().popPose();
+            return;
+        }
+        if (!showBoundary)
+            return;
         graphics.pose().pushPose();
         graphics.pose().translate(screenX, instructionY, 0);
         if (firstTarget != null && secondTarget != null) {
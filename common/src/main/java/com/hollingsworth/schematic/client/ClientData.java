@@ -1,6 +1,7 @@
 package com.hollingsworth.schematic.client;
 
 import com.hollingsworth.schematic.Constants;
+import com.hollingsworth.schematic.api.blockprints.UploadSession;
 import com.hollingsworth.schematic.client.gui.HomeScreen;
 import com.hollingsworth.schematic.client.renderer.StructureRenderer;
 import com.mojang.blaze3d.platform.Window;
@@ -53,6 +54,11 @@ public class ClientData {
         RenderStructureHandler.onCancelHit();
     }
 
+    public static void clientTick() {
+        AreaCaptureHandler.tick();
+        UploadSession.tick();
+    }
+
     public static void onRotateHit(boolean clockwise) {
         RenderStructureHandler.onRotateHit(clockwise);
     }
@@ -25,7 +25,7 @@ public class RenderStructureHandler {
         }
         anchorPos = null;
         placingData = new StructureRenderData(structureTemplate, name, bpId);
-        StructureRenderer.structures.add(placingData);
+        StructureRenderer.addStructure(placingData);
     }
 
     public static void cancelRender(){
@@ -33,7 +33,7 @@ public class RenderStructureHandler {
             return;
         }
         anchorPos = null;
-        StructureRenderer.structures.remove(placingData);
+        StructureRenderer.removeStructure(placingData);
         placingData = null;
     }
 
@@ -55,7 +55,7 @@ public class RenderStructureHandler {
         if (placingData == null) {
             return;
         }
-        placingData.anchorPos = RaycastHelper.getLookingAt(Minecraft.getInstance().player, true).getBlockPos();
+        placingData.setAnchorPos(RaycastHelper.getLookingAt(Minecraft.getInstance().player, true).getBlockPos());
     }
 
     public static void onRotateHit(boolean clockwise) {
@@ -27,6 +27,9 @@ public class LoadingScreen<T> extends BaseSchematicScreen {
     public boolean responseHandled = false;
     Response<T> response;
     public Screen previousScreen = null;
+    //Optional fraction done, shown under the loading text while it is between 0 and 1
+    @Nullable
+    Supplier<Float> progress;
 
     CompletableFuture<ApiResponse<T>> completableFuture;
 
@@ -48,6 +51,11 @@ public class LoadingScreen<T> extends BaseSchematicScreen {
         this.completableFuture = CompletableFuture.supplyAsync(future, Util.backgroundExecutor()).whenCompleteAsync((result, err) -> response = new Response<>(result, err), Minecraft.getInstance());
     }
 
+    public LoadingScreen<T> withProgress(Supplier<Float> progress) {
+        this.progress = progress;
+        return this;
+    }
+
     @Override
     public void init() {
         super.init();
@@ -169,6 +177,13 @@ public class LoadingScreen<T> extends BaseSchematicScreen {
         int centered = loadingX - font.width(component) / 2;
 
         graphics.drawString(font, compWithDots, centered, 120, Constants.WHITE, false);
+        if (progress != null) {
+            float done = progress.get();
+            if (done > 0 && done < 1) {
+                String percent = (int) (done * 100) + "%";
+                graphics.drawString(font, percent, loadingX - font.width(percent) / 2, 132, Constants.WHITE, false);
+            }
+        }
     }
 
     protected record Response<T>(ApiResponse<T> response, @Nullable Throwable throwable) {
@@ -1,6 +1,7 @@
 package com.hollingsworth.schematic.client.gui;
 
 import com.hollingsworth.schematic.Constants;
+import com.hollingsworth.schematic.export.GuidebookLevelRenderer;
 import com.hollingsworth.schematic.export.LytSize;
 import com.hollingsworth.schematic.export.OffScreenRenderer;
 import com.hollingsworth.schematic.export.Scene;
@@ -24,6 +25,11 @@ public class ScenePreview extends AbstractWidget {
     public WrappedScene wrappedScene;
     public Scene scene;
     public OffScreenRenderer renderer;
+    private LytSize preferredSize;
+    // View the renderer's texture currently shows
+    private int renderedYaw;
+    private int renderedPitch;
+    private int renderedRoll;
 
     public ScenePreview(int x, int y, int width, int height, Scene scene, WrappedScene wrappedScene) {
         super(x, y, width, height, Component.empty());
@@ -31,36 +37,50 @@ public class ScenePreview extends AbstractWidget {
         this.scene = scene;
     }
 
+    /**
+     * Re-renders the preview only when the view it was last rendered with changed, the scene itself is static while
+     * the preview is open.
+     */
     public void updateSceneTexture() {
+        // The preferred size comes from the initial camera, so it stays the same however the preview is turned
+        if (preferredSize == null) {
+            preferredSize = wrappedScene.getPreferredSize();
+        }
+        final float scale = (float) Minecraft.getInstance().getWindow().getGuiScale();
+        if (preferredSize.width() <= 0 || preferredSize.height() <= 0) {
+            return;
+        }
+        // We only scale the viewport, not scaling the view matrix means the scene will still fill it
+        var renderWidth = (int) Math.max(1, preferredSize.width() * scale);
+        var renderHeight = (int) Math.max(1, preferredSize.height() * scale);
+        boolean resized = renderer == null || renderer.width != renderWidth || renderer.height != renderHeight;
+        if (!resized && yaw == renderedYaw && pitch == renderedPitch && roll == renderedRoll) {
+            return;
+        }
+
         scene.getCameraSettings().setIsometricYawPitchRoll(yaw, pitch, roll);
         scene.getCameraSettings().setRotationCenter(scene.getWorldCenter());
 
         scene.getCameraSettings().setZoom(1.0f);
         scene.centerScene();
 
-        // Lazily create the renderer using the preferred size of the scene
-        var prefSize = wrappedScene.getPreferredSize();
-        final float scale = (float) Minecraft.getInstance().getWindow().getGuiScale();
-        if (prefSize.width() > 0 && prefSize.height() > 0) {
-            // We only scale the viewport, not scaling the view matrix means the scene will still fill it
-            var renderWidth = (int) Math.max(1, prefSize.width() * scale);
-            var renderHeight = (int) Math.max(1, prefSize.height() * scale);
-
-            // Create/Re-Create Renderer if the desired render-size changed or if the renderer hasn't been created yet
-            if (renderer == null || renderer.width != renderWidth || renderer.height != renderHeight) {
-                if (renderer != null) {
-                    renderer.close();
-                }
-                renderer = new OffScreenRenderer(renderWidth, renderHeight);
+        // Create/Re-Create Renderer if the desired render-size changed or if the renderer hasn't been created yet
+        if (resized) {
+            if (renderer != null) {
+                renderer.close();
             }
-
-            // Render the scene to the renderer's off-screen surface
-            renderer.renderToTexture(this::renderTarget);
+            renderer = new OffScreenRenderer(renderWidth, renderHeight);
         }
+
+        // Render the scene to the renderer's off-screen surface
+        renderer.renderToTexture(this::renderTarget);
+        renderedYaw = yaw;
+        renderedPitch = pitch;
+        renderedRoll = roll;
     }
 
     public void renderTarget() {
-        wrappedScene.renderToCurrentTarget(wrappedScene.getPreferredSize());
+        wrappedScene.renderToCurrentTarget(preferredSize);
     }
 
     public void removed() {
@@ -68,6 +88,7 @@ public class ScenePreview extends AbstractWidget {
             renderer.close();
             renderer = null;
         }
+        GuidebookLevelRenderer.getInstance().release(scene.getLevel());
     }
 
     @Override
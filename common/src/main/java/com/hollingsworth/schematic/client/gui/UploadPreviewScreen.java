@@ -18,6 +18,7 @@ import net.minecraft.resources.ResourceLocation;
 import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplate;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class UploadPreviewScreen extends BaseSchematicScreen {
 
@@ -64,14 +65,15 @@ public class UploadPreviewScreen extends BaseSchematicScreen {
                 ClientUtil.sendMessage(Component.translatable("blockprints.invalid_upload").withStyle(Style.EMPTY.withColor(ChatFormatting.RED)));
                 return;
             }
-            List<WrappedScene.ImageExport> images = sceneExporter.getImages();
+            CompletableFuture<List<WrappedScene.ImageExport>> images = sceneExporter.getImages();
 
 
-            Minecraft.getInstance().setScreen(new LoadingScreen<>(() -> sceneExporter.writeAndUpload(images, this.nameField.getValue(), this.descriptionField.getValue(), this.makePublic, start, end), (res) -> {
+            // Waits for the encodes on the loading screen's worker rather than the render thread
+            Minecraft.getInstance().setScreen(new LoadingScreen<>(() -> sceneExporter.writeAndUpload(images.join(), this.nameField.getValue(), this.descriptionField.getValue(), this.makePublic, start, end), (res) -> {
                 Minecraft.getInstance().setScreen(null);
                 var url = "https://blockprints.io/schematic/" + res;
                 ClientUtil.sendMessage(Component.translatable("blockprints.upload_complete", Component.literal(url).withStyle(Style.EMPTY.withColor(ChatFormatting.BLUE).withClickEvent(new ClickEvent(ClickEvent.Action.OPEN_URL, url)))));
-            }));
+            }).withProgress(sceneExporter::getUploadProgress));
         });
         addRenderableWidget(uploadButton);
         addRenderableWidget(nameField);
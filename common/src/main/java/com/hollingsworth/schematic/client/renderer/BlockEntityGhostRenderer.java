@@ -0,0 +1,148 @@
+package com.hollingsworth.schematic.client.renderer;
+
+import com.hollingsworth.schematic.mixin.ItemRendererAccessor;
+import com.mojang.blaze3d.vertex.BufferBuilder;
+import com.mojang.blaze3d.vertex.PoseStack;
+import com.mojang.blaze3d.vertex.VertexConsumer;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.MultiBufferSource;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.blockentity.BlockEntityRenderDispatcher;
+import net.minecraft.client.renderer.culling.Frustum;
+import net.minecraft.client.renderer.entity.ItemRenderer;
+import net.minecraft.client.renderer.texture.OverlayTexture;
+import net.minecraft.client.resources.model.BakedModel;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.item.ItemDisplayContext;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.phys.AABB;
+import net.minecraft.world.phys.Vec3;
+import net.minecraft.world.phys.shapes.VoxelShape;
+import org.joml.Matrix4f;
+import org.lwjgl.opengl.GL11;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Draws the blocks of a structure that have no baked model (chests, signs, beds...) through their block entity renderers.
+ * Everything goes into one buffer source with a buffer per RenderType, so all ghosts sharing a texture are drawn in a
+ * single batch at the end instead of flushing whenever the type changes. Block entities outside the frustum or past
+ * {@link #renderDistance} are skipped, and past {@link #lodDistance} they are swapped for a cheaper stand in.
+ */
+public class BlockEntityGhostRenderer {
+    public enum Lod {
+        //Always draw the full block entity
+        NONE,
+        //Draw the item model, or the bounding box for items that are themselves drawn by a block entity renderer
+        ITEM_MODEL,
+        BOUNDING_BOX
+    }
+
+    //Block entity ghosts further than this from the camera are not drawn at all
+    public static double renderDistance = 64;
+    //Past this distance block entity ghosts are replaced according to lod
+    public static double lodDistance = 24;
+    public static Lod lod = Lod.ITEM_MODEL;
+
+    private static final int LIGHT = 15728640;
+    private static final BatchingBufferSource BUFFERS = new BatchingBufferSource();
+    //One alpha wrapper shared by every ghost instead of one per block entity
+    private static final DireRenderMethods.MultiplyAlphaRenderTypeBuffer ALPHA_BUFFERS = new DireRenderMethods.MultiplyAlphaRenderTypeBuffer(BUFFERS, 0.5f);
+    private static final Map<Block, ItemStack> ITEM_STACKS = new IdentityHashMap<>();
+
+    /**
+     * @param poseStack Pose at the camera, before any structure translation
+     * @param renderPos The origin the structure is drawn at
+     */
+    public static void render(StructureRenderData data, PoseStack poseStack, Frustum frustum, BlockPos renderPos, Vec3 camera) {
+        FakeRenderingWorld world = data.fakeRenderingWorld;
+        if (world == null || data.blockEntityBlocks.isEmpty()) {
+            return;
+        }
+        BlockEntityRenderDispatcher blockEntityRenderer = Minecraft.getInstance().getBlockEntityRenderDispatcher();
+        StructureTransform transform = data.transform;
+        Matrix4f transformMatrix = transform.matrix();
+        double renderDistanceSqr = renderDistance * renderDistance;
+        double lodDistanceSqr = lodDistance * lodDistance;
+
+        for (StatePos pos : data.blockEntityBlocks) {
+            BlockPos placed = transform.apply(pos.pos);
+            double x = renderPos.getX() + placed.getX();
+            double y = renderPos.getY() + placed.getY();
+            double z = renderPos.getZ() + placed.getZ();
+            double distanceSqr = camera.distanceToSqr(x + 0.5, y + 0.5, z + 0.5);
+            //Chests, beds and the like can poke a little past their block
+            if (distanceSqr > renderDistanceSqr || !frustum.isVisible(new AABB(x, y, z, x + 1, y + 1, z + 1).inflate(0.5)))
+                continue;
+
+            poseStack.pushPose();
+            poseStack.translate(renderPos.getX() - camera.x, renderPos.getY() - camera.y, renderPos.getZ() - camera.z);
+            poseStack.mulPoseMatrix(transformMatrix);
+            poseStack.translate(pos.pos.getX(), pos.pos.getY(), pos.pos.getZ());
+            BlockState state = world.getBlockState(pos.pos);
+            if (lod != Lod.NONE && distanceSqr > lodDistanceSqr) {
+                renderLod(world, pos.pos, state, poseStack);
+            } else {
+                BlockEntity blockEntity = world.getBlockEntity(pos.pos);
+                if (blockEntity != null)
+                    blockEntityRenderer.render(blockEntity, 0, poseStack, ALPHA_BUFFERS);
+                else
+                    ((ItemRendererAccessor) Minecraft.getInstance().getItemRenderer()).getBlockEntityRenderer()
+                            .renderByItem(getItemStack(state), ItemDisplayContext.NONE, poseStack, ALPHA_BUFFERS, LIGHT, OverlayTexture.NO_OVERLAY);
+            }
+            poseStack.popPose();
+        }
+
+        //Mirrored ghosts are inside out, so flip the winding while their batches are drawn
+        if (transform.flipsWinding())
+            GL11.glFrontFace(GL11.GL_CW);
+        BUFFERS.endBatch();
+        if (transform.flipsWinding())
+            GL11.glFrontFace(GL11.GL_CCW);
+    }
+
+    private static void renderLod(FakeRenderingWorld world, BlockPos pos, BlockState state, PoseStack poseStack) {
+        if (lod == Lod.ITEM_MODEL) {
+            ItemRenderer itemRenderer = Minecraft.getInstance().getItemRenderer();
+            ItemStack stack = getItemStack(state);
+            BakedModel model = itemRenderer.getModel(stack, null, null, 0);
+            if (!stack.isEmpty() && !model.isCustomRenderer()) {
+                poseStack.pushPose();
+                poseStack.translate(0.5, 0.5, 0.5);
+                itemRenderer.render(stack, ItemDisplayContext.NONE, false, poseStack, ALPHA_BUFFERS, LIGHT, OverlayTexture.NO_OVERLAY, model);
+                poseStack.popPose();
+                return;
+            }
+        }
+        VoxelShape shape = state.getShape(world, pos);
+        AABB bounds = shape.isEmpty() ? new AABB(0, 0, 0, 1, 1, 1) : shape.bounds();
+        int color = state.getMapColor(world, pos).col;
+        VertexConsumer builder = BUFFERS.getBuffer(DireRenderTypes.MissingBlockOverlay);
+        DireRenderMethods.renderBoxSolid(poseStack.last().pose(), builder, bounds.minX, bounds.minY, bounds.minZ, bounds.maxX, bounds.maxY, bounds.maxZ,
+                ((color >> 16) & 0xFF) / 255f, ((color >> 8) & 0xFF) / 255f, (color & 0xFF) / 255f, 0.4f);
+    }
+
+    private static ItemStack getItemStack(BlockState state) {
+        return ITEM_STACKS.computeIfAbsent(state.getBlock(), ItemStack::new);
+    }
+
+    //Gives every RenderType asked for its own buffer, so nothing is drawn until endBatch
+    private static class BatchingBufferSource extends MultiBufferSource.BufferSource {
+        BatchingBufferSource() {
+            super(new BufferBuilder(256), new LinkedHashMap<>());
+        }
+
+        @Override
+        public VertexConsumer getBuffer(RenderType renderType) {
+            if (!fixedBuffers.containsKey(renderType)) {
+                fixedBuffers.put(renderType, new BufferBuilder(renderType.bufferSize()));
+            }
+            return super.getBuffer(renderType);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.hollingsworth.schematic.client.renderer;
+
+import com.hollingsworth.schematic.platform.Services;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.resources.model.BakedModel;
+import net.minecraft.core.Direction;
+import net.minecraft.util.RandomSource;
+import net.minecraft.world.level.block.state.BlockState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers how each BlockState is drawn so structures don't query models for every block every frame.
+ * BlockState doesn't override equals or hashCode, so the map is effectively identity keyed. Read from mesh building
+ * threads as well as the render thread, and cleared whenever models are reloaded.
+ */
+public class BlockRenderCache {
+    private static final Map<BlockState, RenderClass> CACHE = new ConcurrentHashMap<>();
+
+    public static RenderClass get(BlockState state) {
+        RenderClass renderClass = CACHE.get(state);
+        if (renderClass == null) {
+            renderClass = classify(state);
+            CACHE.put(state, renderClass);
+        }
+        return renderClass;
+    }
+
+    public static void clear() {
+        CACHE.clear();
+    }
+
+    private static RenderClass classify(BlockState state) {
+        BakedModel model = Minecraft.getInstance().getBlockRenderer().getBlockModel(state);
+        RandomSource random = RandomSource.create();
+        boolean modelRender = !model.getQuads(state, null, random).isEmpty();
+        for (Direction direction : Direction.values()) {
+            if (modelRender) break;
+            modelRender = !model.getQuads(state, direction, random).isEmpty();
+        }
+        List<RenderType> renderTypes = new ArrayList<>();
+        for (RenderType renderType : Services.PLATFORM.getRenderTypes(model, state, random)) {
+            renderTypes.add(renderType);
+        }
+        return new RenderClass(modelRender, !state.getFluidState().isEmpty(), List.copyOf(renderTypes));
+    }
+
+    /**
+     * @param modelRender  The state has baked quads, so it goes into the section meshes
+     * @param fluid        The state holds a fluid, which is also tesselated into the meshes
+     * @param renderTypes  The chunk layers the model draws into, before the cutout full block swap to translucent
+     */
+    public record RenderClass(boolean modelRender, boolean fluid, List<RenderType> renderTypes) {
+        public boolean isMeshed() {
+            return modelRender || fluid;
+        }
+    }
+}
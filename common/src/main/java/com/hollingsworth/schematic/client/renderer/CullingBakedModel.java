@@ -0,0 +1,75 @@
+package com.hollingsworth.schematic.client.renderer;
+
+import net.minecraft.client.renderer.block.model.BakedQuad;
+import net.minecraft.client.renderer.block.model.ItemOverrides;
+import net.minecraft.client.renderer.block.model.ItemTransforms;
+import net.minecraft.client.renderer.texture.TextureAtlasSprite;
+import net.minecraft.client.resources.model.BakedModel;
+import net.minecraft.core.Direction;
+import net.minecraft.util.RandomSource;
+import net.minecraft.world.level.block.state.BlockState;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Wraps a model and drops the quads of the given cull faces. We can't use tesselateBlock's checkSides because ghost
+ * blocks are tesselated away from their real position, so the culling is decided up front against the fake world instead.
+ */
+public class CullingBakedModel implements BakedModel {
+    private final BakedModel wrapped;
+    //Bitmask of Direction#get3DDataValue
+    private final int culledFaces;
+
+    public CullingBakedModel(BakedModel wrapped, int culledFaces) {
+        this.wrapped = wrapped;
+        this.culledFaces = culledFaces;
+    }
+
+    public static boolean isCulled(int culledFaces, Direction direction) {
+        return (culledFaces & (1 << direction.get3DDataValue())) != 0;
+    }
+
+    @Override
+    public List<BakedQuad> getQuads(@Nullable BlockState state, @Nullable Direction direction, RandomSource random) {
+        if (direction != null && isCulled(culledFaces, direction)) {
+            return List.of();
+        }
+        return wrapped.getQuads(state, direction, random);
+    }
+
+    @Override
+    public boolean useAmbientOcclusion() {
+        return wrapped.useAmbientOcclusion();
+    }
+
+    @Override
+    public boolean isGui3d() {
+        return wrapped.isGui3d();
+    }
+
+    @Override
+    public boolean usesBlockLight() {
+        return wrapped.usesBlockLight();
+    }
+
+    @Override
+    public boolean isCustomRenderer() {
+        return wrapped.isCustomRenderer();
+    }
+
+    @Override
+    public TextureAtlasSprite getParticleIcon() {
+        return wrapped.getParticleIcon();
+    }
+
+    @Override
+    public ItemTransforms getTransforms() {
+        return wrapped.getTransforms();
+    }
+
+    @Override
+    public ItemOverrides getOverrides() {
+        return wrapped.getOverrides();
+    }
+}
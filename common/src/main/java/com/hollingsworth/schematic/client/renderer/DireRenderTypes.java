@@ -70,6 +70,32 @@ public class DireRenderTypes extends RenderType {
                             .setLightmapState(NO_LIGHTMAP)
                             .createCompositeState(false));
 
+    //Greedy merged full cube faces, the shader repeats each face's sprite across the quad
+    public static final RenderType GhostGreedy = create("GadgetGhostGreedy",
+            StructureGreedyMesher.FORMAT, VertexFormat.Mode.QUADS, 256, false, false,
+            RenderType.CompositeState.builder()
+                    .setShaderState(new RenderStateShard.ShaderStateShard(() -> StructureGreedyMesher.greedyShader))
+                    .setTextureState(BLOCK_SHEET_MIPPED)
+                    .setTransparencyState(TRANSLUCENT_TRANSPARENCY)
+                    .setDepthTestState(LEQUAL_DEPTH_TEST)
+                    .setCullState(CULL)
+                    .setLightmapState(NO_LIGHTMAP)
+                    .setWriteMaskState(COLOR_DEPTH_WRITE)
+                    .createCompositeState(false));
+
+    //Flat shaded, untextured quads for the coloured level of detail of distant structure sections
+    public static final RenderType GhostLod = create("GadgetGhostLod",
+            DefaultVertexFormat.POSITION_COLOR, VertexFormat.Mode.QUADS, 256, false, false,
+            RenderType.CompositeState.builder()
+                    .setShaderState(RenderStateShard.POSITION_COLOR_SHADER)
+                    .setTransparencyState(TRANSLUCENT_TRANSPARENCY)
+                    .setTextureState(NO_TEXTURE)
+                    .setDepthTestState(LEQUAL_DEPTH_TEST)
+                    .setCullState(CULL)
+                    .setLightmapState(NO_LIGHTMAP)
+                    .setWriteMaskState(COLOR_DEPTH_WRITE)
+                    .createCompositeState(false));
+
     public static final RenderType MissingBlockOverlay = create("GadgetMissingBlockOverlay",
             DefaultVertexFormat.POSITION_COLOR, VertexFormat.Mode.QUADS, 256, false, false,
             RenderType.CompositeState.builder()
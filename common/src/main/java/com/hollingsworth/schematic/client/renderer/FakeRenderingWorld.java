@@ -1,5 +1,8 @@
 package com.hollingsworth.schematic.client.renderer;
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.Util;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.multiplayer.ClientLevel;
 import net.minecraft.core.*;
@@ -26,11 +29,15 @@ import net.minecraft.world.level.border.WorldBorder;
 import net.minecraft.world.level.chunk.ChunkAccess;
 import net.minecraft.world.level.chunk.ChunkSource;
 import net.minecraft.world.level.chunk.ChunkStatus;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
 import net.minecraft.world.level.dimension.DimensionType;
 import net.minecraft.world.level.entity.EntityTypeTest;
 import net.minecraft.world.level.entity.LevelEntityGetter;
 import net.minecraft.world.level.gameevent.GameEvent;
 import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
 import net.minecraft.world.level.lighting.LevelLightEngine;
 import net.minecraft.world.level.material.Fluid;
 import net.minecraft.world.level.material.FluidState;
@@ -46,18 +53,64 @@ import net.minecraft.world.ticks.LevelTickAccess;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 
 public class FakeRenderingWorld extends Level implements LevelAccessor {
-    public final HashMap<BlockPos, BlockState> positions = new HashMap<>();
+    private static final BlockState AIR = Blocks.AIR.defaultBlockState();
+    private static final BlockState VOID_AIR = Blocks.VOID_AIR.defaultBlockState();
+    //The structure's own blocks, in structure relative coordinates
+    public final PalettedBlockStore positions = new PalettedBlockStore();
     private Level realWorld;
     private BlockPos lookingAt;
+    //How the structure is placed, so lookups past its edges hit the real blocks that will actually be next to it
+    private volatile StructureTransform transform = StructureTransform.IDENTITY;
+    //Copies of the real world sections around the structure, taken on the main thread so mesh workers never read a
+    //chunk the client is changing. When a block in one changes, the map is swapped for a copy with that section recopied
+    @Nullable
+    private volatile Long2ObjectMap<PalettedContainer<BlockState>> sectionSnapshot;
+    //Block entities are created once per fake world and reused every frame. The world itself is rebuilt when the
+    //structure moves, which re-keys this cache with it
+    private final Long2ObjectOpenHashMap<BlockEntity> blockEntities = new Long2ObjectOpenHashMap<>();
 
     public FakeRenderingWorld(Level rWorld, ArrayList<StatePos> coordinates, BlockPos lookingAt) {
+        this(rWorld, coordinates, lookingAt, null, StructureTransform.IDENTITY);
+    }
+
+    /**
+     * @param snapshotBounds If not null, the real world sections around these (placed, origin relative) bounds are copied
+     *                       up front and the world becomes safe to read from mesh building threads.
+     * @param transform      The placement of the structure. Blocks stay in structure coordinates, only real world lookups are transformed.
+     */
+    public FakeRenderingWorld(Level rWorld, ArrayList<StatePos> coordinates, BlockPos lookingAt, @Nullable BoundingBox snapshotBounds, StructureTransform transform) {
         this(rWorld);
         this.lookingAt = lookingAt;
+        this.transform = transform;
+        if (snapshotBounds != null) {
+            snapshotRealWorld(snapshotBounds);
+        }
+        fill(coordinates);
+    }
+
+    /**
+     * Copies the real world around the structure here, on the main thread, then fills in the structure's blocks and
+     * their neighbour shapes on the background executor. Nothing else touches the world until it is handed back, so
+     * the render thread only pays for the section copies.
+     * @param snapshotBounds The structure's placed, origin relative bounds
+     */
+    public static CompletableFuture<FakeRenderingWorld> build(Level rWorld, List<StatePos> coordinates, BlockPos lookingAt, BoundingBox snapshotBounds, StructureTransform transform) {
+        FakeRenderingWorld world = new FakeRenderingWorld(rWorld);
+        world.lookingAt = lookingAt;
+        world.transform = transform;
+        world.snapshotRealWorld(snapshotBounds);
+        return CompletableFuture.supplyAsync(() -> {
+            world.fill(coordinates);
+            return world;
+        }, Util.backgroundExecutor());
+    }
+
+    private void fill(List<StatePos> coordinates) {
         for (StatePos statePos : coordinates) {
             this.setBlock(statePos.pos, statePos.state, 0);
         }
@@ -69,6 +122,11 @@ public class FakeRenderingWorld extends Level implements LevelAccessor {
                 e.printStackTrace();
             }
         }
+        for (StatePos statePos : coordinates) {
+            if (statePos.state.hasBlockEntity()) {
+                getBlockEntity(statePos.pos);
+            }
+        }
     }
 
     public FakeRenderingWorld(Level world) {
@@ -77,25 +135,167 @@ public class FakeRenderingWorld extends Level implements LevelAccessor {
         this.realWorld = world;
     }
 
+    /**
+     * Re-runs the neighbour shape update for structure blocks next to a position whose real world state changed.
+     * Only existing positions are overwritten, so mesh workers reading concurrently never see a section appear.
+     */
+    public void refreshNeighbourShapes(BlockPos pos) {
+        if (sectionSnapshot != null) {
+            BlockPos worldPos = transform.apply(pos).offset(lookingAt);
+            Long2ObjectMap<PalettedContainer<BlockState>> updated = new Long2ObjectOpenHashMap<>(sectionSnapshot);
+            snapshotSection(updated, SectionPos.blockToSectionCoord(worldPos.getX()), SectionPos.blockToSectionCoord(worldPos.getY()),
+                    SectionPos.blockToSectionCoord(worldPos.getZ()));
+            sectionSnapshot = updated;
+        }
+        for (Direction direction : Direction.values()) {
+            BlockPos neighbour = pos.relative(direction);
+            BlockState state = positions.get(neighbour.getX(), neighbour.getY(), neighbour.getZ());
+            if (state == null) continue;
+            try {
+                this.setBlock(neighbour, Block.updateFromNeighbourShapes(state, this, neighbour), 0);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Points real world lookups at a new placement of the structure and recopies the real world around its new bounds.
+     * The structure's own blocks are left alone, see {@link #edgeShapeUpdates} for the ones next to the real world.
+     * @param snapshotBounds The structure's placed, origin relative bounds
+     */
+    public void setTransform(StructureTransform transform, BoundingBox snapshotBounds) {
+        snapshotRealWorld(snapshotBounds);
+        this.transform = transform;
+    }
+
+    public StructureTransform getTransform() {
+        return transform;
+    }
+
+    /**
+     * Works out the neighbour shapes of the blocks on the faces of the structure, the only ones with real world
+     * neighbours. Only reads, so it can run off thread. The result is applied with {@link #setBlock} on the main thread.
+     * @param size The template's size, its blocks span 0 to size - 1 in structure coordinates
+     * @return The edge blocks whose state changed
+     */
+    public List<StatePos> edgeShapeUpdates(Vec3i size) {
+        List<StatePos> updates = new ArrayList<>();
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        for (int x = 0; x < size.getX(); x++) {
+            for (int y = 0; y < size.getY(); y++) {
+                boolean onSide = x == 0 || x == size.getX() - 1 || y == 0 || y == size.getY() - 1;
+                //Inside the x and y faces only the two z faces are on the edge
+                int step = onSide ? 1 : Math.max(1, size.getZ() - 1);
+                for (int z = 0; z < size.getZ(); z += step) {
+                    BlockState state = positions.get(x, y, z);
+                    if (state == null || state.isAir()) continue;
+                    pos.set(x, y, z);
+                    try {
+                        BlockState adjustedState = Block.updateFromNeighbourShapes(state, this, pos);
+                        if (adjustedState != state) {
+                            updates.add(new StatePos(adjustedState, pos.immutable()));
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+        return updates;
+    }
+
+    private void snapshotRealWorld(BoundingBox bounds) {
+        Long2ObjectMap<PalettedContainer<BlockState>> snapshot = new Long2ObjectOpenHashMap<>();
+        int minX = SectionPos.blockToSectionCoord(bounds.minX() + lookingAt.getX() - 1);
+        int maxX = SectionPos.blockToSectionCoord(bounds.maxX() + lookingAt.getX() + 1);
+        int minY = SectionPos.blockToSectionCoord(bounds.minY() + lookingAt.getY() - 1);
+        int maxY = SectionPos.blockToSectionCoord(bounds.maxY() + lookingAt.getY() + 1);
+        int minZ = SectionPos.blockToSectionCoord(bounds.minZ() + lookingAt.getZ() - 1);
+        int maxZ = SectionPos.blockToSectionCoord(bounds.maxZ() + lookingAt.getZ() + 1);
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                for (int y = minY; y <= maxY; y++) {
+                    snapshotSection(snapshot, x, y, z);
+                }
+            }
+        }
+        sectionSnapshot = snapshot;
+    }
+
+    //Sections of only air are left out, lookups treat a missing section as air
+    private void snapshotSection(Long2ObjectMap<PalettedContainer<BlockState>> snapshot, int sectionX, int sectionY, int sectionZ) {
+        int index = realWorld.getSectionIndexFromSectionY(sectionY);
+        if (index < 0 || index >= realWorld.getSectionsCount()) {
+            return;
+        }
+        LevelChunkSection section = realWorld.getChunk(sectionX, sectionZ).getSection(index);
+        long key = SectionPos.asLong(sectionX, sectionY, sectionZ);
+        if (section.hasOnlyAir()) {
+            snapshot.remove(key);
+        } else {
+            snapshot.put(key, section.getStates().copy());
+        }
+    }
+
+    //Reads straight from the chunk section so lookups outside the structure don't allocate an offset BlockPos
+    private BlockState getRealBlockState(int x, int y, int z) {
+        if (!transform.isIdentity()) {
+            BlockPos placed = transform.apply(new BlockPos(x, y, z));
+            x = placed.getX();
+            z = placed.getZ();
+        }
+        int worldX = x + lookingAt.getX();
+        int worldY = y + lookingAt.getY();
+        int worldZ = z + lookingAt.getZ();
+        if (realWorld.isOutsideBuildHeight(worldY)) {
+            return VOID_AIR;
+        }
+        int chunkX = SectionPos.blockToSectionCoord(worldX);
+        int chunkZ = SectionPos.blockToSectionCoord(worldZ);
+        Long2ObjectMap<PalettedContainer<BlockState>> snapshot = sectionSnapshot;
+        if (snapshot != null) {
+            PalettedContainer<BlockState> states = snapshot.get(SectionPos.asLong(chunkX, SectionPos.blockToSectionCoord(worldY), chunkZ));
+            return states == null ? AIR : states.get(worldX & 15, worldY & 15, worldZ & 15);
+        }
+        LevelChunk chunk = realWorld.getChunk(chunkX, chunkZ);
+        LevelChunkSection section = chunk.getSection(chunk.getSectionIndex(worldY));
+        return section.getBlockState(worldX & 15, worldY & 15, worldZ & 15);
+    }
+
     @Nullable
     @Override
     public BlockEntity getBlockEntity(BlockPos pos) {
         BlockState blockState = getBlockState(pos);
-        if (blockState.hasBlockEntity()) {
-            BlockEntity blockEntity = ((EntityBlock) blockState.getBlock()).newBlockEntity(pos.offset(lookingAt), blockState);
-            blockEntity.setLevel(this.realWorld);
+        if (!blockState.hasBlockEntity()) {
+            return null;
+        }
+        //Models may ask for block entities from mesh building threads, so guard the cache
+        synchronized (blockEntities) {
+            BlockEntity blockEntity = blockEntities.get(pos.asLong());
+            //Neighbour shape refreshes can change the state (chest halves, etc.), in which case start over
+            if (blockEntity == null || blockEntity.getBlockState() != blockState) {
+                blockEntity = ((EntityBlock) blockState.getBlock()).newBlockEntity(transform.apply(pos).offset(lookingAt), blockState);
+                if (blockEntity == null) {
+                    blockEntities.remove(pos.asLong());
+                    return null;
+                }
+                blockEntity.setLevel(this.realWorld);
+                blockEntities.put(pos.asLong(), blockEntity);
+            }
             return blockEntity;
         }
-        return null;
     }
 
     @Override
     public BlockState getBlockState(BlockPos pos) {
-        return positions.containsKey(pos) ? positions.get(pos) : realWorld.getBlockState(pos.offset(lookingAt));
+        BlockState state = positions.get(pos.getX(), pos.getY(), pos.getZ());
+        return state != null ? state : getRealBlockState(pos.getX(), pos.getY(), pos.getZ());
     }
 
     public BlockState getBlockStateWithoutReal(BlockPos pos) {
-        return positions.containsKey(pos) ? positions.get(pos) : Blocks.AIR.defaultBlockState();
+        BlockState state = positions.get(pos.getX(), pos.getY(), pos.getZ());
+        return state != null ? state : AIR;
     }
 
     @Override
@@ -110,7 +310,7 @@ public class FakeRenderingWorld extends Level implements LevelAccessor {
 
     @Override
     public boolean setBlock(BlockPos pos, BlockState state, int p_46949_, int p_46950_) {
-        positions.put(pos, state);
+        positions.set(pos.getX(), pos.getY(), pos.getZ(), state);
         return true;
     }
 
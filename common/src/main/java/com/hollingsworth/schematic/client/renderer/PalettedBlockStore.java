@@ -0,0 +1,61 @@
+package com.hollingsworth.schematic.client.renderer;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.level.block.state.BlockState;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Block storage for the fake world, laid out like vanilla's PalettedContainer: 16x16x16 sections of indices into
+ * one palette of states shared by the whole structure. Reads never allocate.
+ * Id 0 is reserved for positions the structure does not contain.
+ */
+public class PalettedBlockStore {
+    private static final int SECTION_VOLUME = 16 * 16 * 16;
+    //Ids are stored as chars
+    private static final int MAX_PALETTE_SIZE = Character.MAX_VALUE + 1;
+
+    private final Long2ObjectOpenHashMap<char[]> sections = new Long2ObjectOpenHashMap<>();
+    private final Reference2IntOpenHashMap<BlockState> paletteIds = new Reference2IntOpenHashMap<>();
+    //Doubled into a copy when full rather than resized in place, so threads reading while a state is added never see a half grown array
+    private volatile BlockState[] palette = new BlockState[16];
+    //Used slots of the palette, including the reserved id 0
+    private int paletteSize = 1;
+
+    @Nullable
+    public BlockState get(int x, int y, int z) {
+        char[] section = sections.get(SectionPos.asLong(x >> 4, y >> 4, z >> 4));
+        if (section == null) {
+            return null;
+        }
+        int id = section[index(x, y, z)];
+        return id == 0 ? null : palette[id];
+    }
+
+    public void set(int x, int y, int z, BlockState state) {
+        int id = paletteIds.getInt(state);
+        if (id == 0) {
+            if (paletteSize == MAX_PALETTE_SIZE) {
+                throw new IllegalStateException("Structure has more than " + (MAX_PALETTE_SIZE - 1) + " distinct block states");
+            }
+            id = paletteSize++;
+            BlockState[] grown = id < palette.length ? palette : Arrays.copyOf(palette, Math.min(palette.length * 2, MAX_PALETTE_SIZE));
+            grown[id] = state;
+            //Written back even when it did not grow, so readers see the new state once they see its id
+            palette = grown;
+            paletteIds.put(state, id);
+        }
+        sections.computeIfAbsent(SectionPos.asLong(x >> 4, y >> 4, z >> 4), key -> new char[SECTION_VOLUME])[index(x, y, z)] = (char) id;
+    }
+
+    public int getPaletteSize() {
+        return paletteSize - 1;
+    }
+
+    private static int index(int x, int y, int z) {
+        return ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+    }
+}
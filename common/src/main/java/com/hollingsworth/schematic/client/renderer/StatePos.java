@@ -17,9 +17,12 @@ import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplate;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class StatePos {
@@ -79,8 +82,9 @@ public class StatePos {
 
     public static ArrayList<BlockState> getBlockStateMap(ArrayList<StatePos> list) {
         ArrayList<BlockState> blockStateMap = new ArrayList<>();
+        Set<BlockState> seen = Collections.newSetFromMap(new IdentityHashMap<>());
         for (StatePos statePos : list) {
-            if (!blockStateMap.contains(statePos.state))
+            if (seen.add(statePos.state))
                 blockStateMap.add(statePos.state);
         }
         return blockStateMap;
@@ -0,0 +1,320 @@
+package com.hollingsworth.schematic.client.renderer;
+
+import com.google.common.collect.ImmutableMap;
+import com.hollingsworth.schematic.Constants;
+import com.mojang.blaze3d.vertex.BufferBuilder;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import com.mojang.blaze3d.vertex.VertexFormatElement;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.ShaderInstance;
+import net.minecraft.client.renderer.block.model.BakedQuad;
+import net.minecraft.client.renderer.texture.TextureAtlasSprite;
+import net.minecraft.client.resources.model.BakedModel;
+import net.minecraft.client.resources.model.SimpleBakedModel;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.util.RandomSource;
+import net.minecraft.world.level.EmptyBlockGetter;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Merges the coplanar faces of identical full cube blocks into large quads. The quads carry block unit texture
+ * coordinates plus the bounds of their sprite in the atlas, and the ghost_greedy shader wraps the coordinates back
+ * into the sprite, so one quad repeats the texture across a whole wall or floor.
+ * <p>
+ * Only plain cubes qualify: one untinted quad per face covering the whole face and the whole sprite. Anything else
+ * (random variants, overlays, connected textures, non cube shapes) goes through the normal tesselation.
+ */
+public class StructureGreedyMesher {
+    public static final ResourceLocation SHADER_ID = new ResourceLocation(Constants.MOD_ID, "ghost_greedy");
+    //Set by the platform shader registration, null until shaders have loaded
+    public static ShaderInstance greedyShader;
+    //u0, v0, u1, v1 of the face's sprite
+    public static final VertexFormatElement ELEMENT_SPRITE_BOUNDS = new VertexFormatElement(0, VertexFormatElement.Type.FLOAT, VertexFormatElement.Usage.GENERIC, 4);
+    public static final VertexFormat FORMAT = new VertexFormat(ImmutableMap.<String, VertexFormatElement>builder()
+            .put("Position", DefaultVertexFormat.ELEMENT_POSITION)
+            .put("Color", DefaultVertexFormat.ELEMENT_COLOR)
+            .put("UV0", DefaultVertexFormat.ELEMENT_UV0)
+            .put("SpriteBounds", ELEMENT_SPRITE_BOUNDS)
+            .build());
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final CubeFaces NOT_MERGEABLE = new CubeFaces(new Face[0]);
+    private static final Map<BlockState, CubeFaces> FACES = new ConcurrentHashMap<>();
+
+    public static boolean isAvailable() {
+        return greedyShader != null;
+    }
+
+    public static void clear() {
+        FACES.clear();
+    }
+
+    public static boolean canMerge(BlockState state) {
+        return getFaces(state) != NOT_MERGEABLE;
+    }
+
+    /**
+     * Meshes every mergeable block of a section into the builder, in structure coordinates.
+     * The blocks it takes are the ones {@link #canMerge} accepts, the caller tesselates the rest as usual.
+     */
+    public static void build(FakeRenderingWorld world, StructureSection section, List<StatePos> blocks, float transparency, BufferBuilder builder) {
+        int originX = (int) section.bounds.minX;
+        int originY = (int) section.bounds.minY;
+        int originZ = (int) section.bounds.minZ;
+        //Faces only merge between identical states, so the mask holds an id per state, 0 meaning no face
+        Reference2IntMap<BlockState> ids = new Reference2IntOpenHashMap<>();
+        List<CubeFaces> palette = new ArrayList<>();
+        palette.add(NOT_MERGEABLE);
+        int[] grid = new int[16 * 16 * 16];
+        BlockState[] states = new BlockState[16 * 16 * 16];
+        for (StatePos pos : blocks) {
+            BlockState renderState = world.getBlockStateWithoutReal(pos.pos);
+            if (!canMerge(renderState)) continue;
+            int id = ids.getInt(renderState);
+            if (id == 0) {
+                id = palette.size();
+                ids.put(renderState, id);
+                palette.add(getFaces(renderState));
+            }
+            int index = index(pos.pos.getX() - originX, pos.pos.getY() - originY, pos.pos.getZ() - originZ);
+            grid[index] = id;
+            states[index] = renderState;
+        }
+        if (palette.size() == 1) {
+            return;
+        }
+
+        int alpha = (int) (transparency * 255);
+        int[] mask = new int[16 * 16];
+        int[] cell = new int[3];
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        BlockPos.MutableBlockPos neighbourPos = new BlockPos.MutableBlockPos();
+        for (Direction direction : DIRECTIONS) {
+            int n = direction.getAxis().ordinal();
+            int u = (n + 1) % 3;
+            int v = (n + 2) % 3;
+            for (int slice = 0; slice < 16; slice++) {
+                boolean any = false;
+                for (int j = 0; j < 16; j++) {
+                    for (int i = 0; i < 16; i++) {
+                        cell[n] = slice;
+                        cell[u] = i;
+                        cell[v] = j;
+                        int index = index(cell[0], cell[1], cell[2]);
+                        int id = grid[index];
+                        if (id != 0) {
+                            pos.set(originX + cell[0], originY + cell[1], originZ + cell[2]);
+                            neighbourPos.setWithOffset(pos, direction);
+                            if (isFaceCulled(world, states[index], pos, direction, neighbourPos)) {
+                                id = 0;
+                            }
+                        }
+                        mask[i + j * 16] = id;
+                        any |= id != 0;
+                    }
+                }
+                if (any) {
+                    mergeSlice(builder, world, mask, palette, direction, n, u, v, slice, originX, originY, originZ, alpha);
+                }
+            }
+        }
+    }
+
+    //Same rule as StructureRenderer#getCulledFaces
+    private static boolean isFaceCulled(FakeRenderingWorld world, BlockState state, BlockPos pos, Direction direction, BlockPos neighbourPos) {
+        if (!StructureRenderer.cullHiddenFaces) {
+            return false;
+        }
+        if (!StructureRenderer.cullAgainstWorld && world.getBlockStateWithoutReal(neighbourPos).isAir()) {
+            return false;
+        }
+        return !Block.shouldRenderFace(state, world, pos, direction, neighbourPos);
+    }
+
+    private static void mergeSlice(BufferBuilder builder, FakeRenderingWorld world, int[] mask, List<CubeFaces> palette, Direction direction,
+                                   int n, int u, int v, int slice, int originX, int originY, int originZ, int alpha) {
+        boolean positive = direction.getAxisDirection() == Direction.AxisDirection.POSITIVE;
+        float plane = slice + (positive ? 1 : 0);
+        for (int j = 0; j < 16; j++) {
+            for (int i = 0; i < 16; ) {
+                int id = mask[i + j * 16];
+                if (id == 0) {
+                    i++;
+                    continue;
+                }
+                int width = 1;
+                while (i + width < 16 && mask[i + width + j * 16] == id) width++;
+                int height = 1;
+                grow:
+                while (j + height < 16) {
+                    for (int k = 0; k < width; k++) {
+                        if (mask[i + k + (j + height) * 16] != id) break grow;
+                    }
+                    height++;
+                }
+                for (int h = 0; h < height; h++) {
+                    for (int k = 0; k < width; k++) {
+                        mask[i + k + (j + h) * 16] = 0;
+                    }
+                }
+
+                Face face = palette.get(id).faces[direction.get3DDataValue()];
+                int shade = (int) ((face.shade ? world.getShade(direction, true) : 1f) * 255);
+                int[][] corners = {{i, j}, {i + width, j}, {i + width, j + height}, {i, j + height}};
+                //u x v points along the positive axis, so the corners are counter clockwise from that side
+                for (int c = 0; c < 4; c++) {
+                    int[] corner = corners[positive ? c : 3 - c];
+                    float[] vertex = new float[3];
+                    vertex[n] = plane;
+                    vertex[u] = corner[0];
+                    vertex[v] = corner[1];
+                    builder.vertex(originX + vertex[0], originY + vertex[1], originZ + vertex[2])
+                            .color(shade, shade, shade, alpha)
+                            .uv(face.tileS(corner[0], corner[1]), face.tileT(corner[0], corner[1]));
+                    builder.putFloat(0, face.u0);
+                    builder.putFloat(4, face.v0);
+                    builder.putFloat(8, face.u1);
+                    builder.putFloat(12, face.v1);
+                    builder.nextElement();
+                    builder.endVertex();
+                }
+                i += width;
+            }
+        }
+    }
+
+    private static CubeFaces getFaces(BlockState state) {
+        CubeFaces faces = FACES.get(state);
+        if (faces == null) {
+            faces = computeFaces(state);
+            FACES.put(state, faces);
+        }
+        return faces;
+    }
+
+    private static CubeFaces computeFaces(BlockState state) {
+        if (state.hasBlockEntity() || !state.getFluidState().isEmpty()) {
+            return NOT_MERGEABLE;
+        }
+        //Cutout and translucent cubes show the faces behind them, so merging would change how they look
+        if (!BlockRenderCache.get(state).renderTypes().equals(List.of(RenderType.solid()))) {
+            return NOT_MERGEABLE;
+        }
+        if (!Block.isShapeFullBlock(state.getShape(EmptyBlockGetter.INSTANCE, BlockPos.ZERO))) {
+            return NOT_MERGEABLE;
+        }
+        //Random variants and custom model wrappers can change per position
+        BakedModel model = Minecraft.getInstance().getBlockRenderer().getBlockModel(state);
+        if (!(model instanceof SimpleBakedModel)) {
+            return NOT_MERGEABLE;
+        }
+        RandomSource random = RandomSource.create();
+        random.setSeed(42L);
+        if (!model.getQuads(state, null, random).isEmpty()) {
+            return NOT_MERGEABLE;
+        }
+        Face[] faces = new Face[6];
+        for (Direction direction : DIRECTIONS) {
+            random.setSeed(42L);
+            List<BakedQuad> quads = model.getQuads(state, direction, random);
+            if (quads.size() != 1) {
+                return NOT_MERGEABLE;
+            }
+            Face face = Face.of(quads.get(0), direction);
+            if (face == null) {
+                return NOT_MERGEABLE;
+            }
+            faces[direction.get3DDataValue()] = face;
+        }
+        return new CubeFaces(faces);
+    }
+
+    private static int index(int x, int y, int z) {
+        return (y << 8) | (z << 4) | x;
+    }
+
+    private record CubeFaces(Face[] faces) {
+    }
+
+    /**
+     * How a face's texture lies on it: the position along the slice's u and v axes maps to a position in the sprite,
+     * in sprite widths, by s = s0 + su * u + sv * v and likewise for t. For a face showing its whole sprite these are
+     * all -1, 0 or 1, so wrapping s and t into [0, 1) repeats the texture exactly as the per block quads would.
+     */
+    private record Face(float u0, float v0, float u1, float v1, boolean shade, int s0, int su, int sv, int t0, int tu, int tv) {
+        float tileS(int u, int v) {
+            return s0 + su * u + sv * v;
+        }
+
+        float tileT(int u, int v) {
+            return t0 + tu * u + tv * v;
+        }
+
+        static Face of(BakedQuad quad, Direction direction) {
+            if (quad.isTinted() || quad.getDirection() != direction) {
+                return null;
+            }
+            TextureAtlasSprite sprite = quad.getSprite();
+            int n = direction.getAxis().ordinal();
+            int u = (n + 1) % 3;
+            int v = (n + 2) % 3;
+            int[] data = quad.getVertices();
+            int stride = DefaultVertexFormat.BLOCK.getIntegerSize();
+            int[][] local = new int[4][];
+            for (int k = 0; k < 4; k++) {
+                float[] position = {Float.intBitsToFloat(data[k * stride]), Float.intBitsToFloat(data[k * stride + 1]), Float.intBitsToFloat(data[k * stride + 2])};
+                float s = (Float.intBitsToFloat(data[k * stride + 4]) - sprite.getU0()) / (sprite.getU1() - sprite.getU0());
+                float t = (Float.intBitsToFloat(data[k * stride + 5]) - sprite.getV0()) / (sprite.getV1() - sprite.getV0());
+                //The quad has to sit on the block face and reach its corners and the sprite's corners
+                int[] corner = {snap(position[u]), snap(position[v]), snap(s), snap(t), snap(position[n])};
+                for (int value : corner) {
+                    if (value == -1) return null;
+                }
+                if (corner[4] != (direction.getAxisDirection() == Direction.AxisDirection.POSITIVE ? 1 : 0)) {
+                    return null;
+                }
+                local[k] = corner;
+            }
+            //Solve the mapping from the corner at the face origin and its two neighbours, then check it holds for all four
+            int[] origin = null, alongU = null, alongV = null;
+            for (int[] corner : local) {
+                if (corner[0] == 0 && corner[1] == 0) origin = corner;
+                else if (corner[0] == 1 && corner[1] == 0) alongU = corner;
+                else if (corner[0] == 0 && corner[1] == 1) alongV = corner;
+            }
+            if (origin == null || alongU == null || alongV == null) {
+                return null;
+            }
+            int s0 = origin[2], su = alongU[2] - s0, sv = alongV[2] - s0;
+            int t0 = origin[3], tu = alongU[3] - t0, tv = alongV[3] - t0;
+            if (su * tv - sv * tu == 0) {
+                return null;
+            }
+            for (int[] corner : local) {
+                if (s0 + su * corner[0] + sv * corner[1] != corner[2] || t0 + tu * corner[0] + tv * corner[1] != corner[3]) {
+                    return null;
+                }
+            }
+            return new Face(sprite.getU0(), sprite.getV0(), sprite.getU1(), sprite.getV1(), quad.isShade(), s0, su, sv, t0, tu, tv);
+        }
+
+        //0 or 1 if the value is on either edge, -1 if it is somewhere in between
+        private static int snap(float value) {
+            if (Math.abs(value) < 1.0E-4f) return 0;
+            if (Math.abs(value - 1) < 1.0E-4f) return 1;
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.hollingsworth.schematic.client.renderer;
+
+import com.hollingsworth.schematic.Constants;
+import com.hollingsworth.schematic.mixin.VertexBufferAccessor;
+import com.mojang.blaze3d.platform.GlStateManager;
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.vertex.BufferBuilder;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
+import com.mojang.blaze3d.vertex.PoseStack;
+import com.mojang.blaze3d.vertex.VertexBuffer;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.LightTexture;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.ShaderInstance;
+import net.minecraft.client.renderer.block.model.BakedQuad;
+import net.minecraft.client.renderer.texture.OverlayTexture;
+import net.minecraft.client.resources.model.BakedModel;
+import net.minecraft.client.resources.model.MultiPartBakedModel;
+import net.minecraft.client.resources.model.SimpleBakedModel;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.util.RandomSource;
+import net.minecraft.world.level.EmptyBlockGetter;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.phys.shapes.Shapes;
+import org.joml.Matrix4f;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL33;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Draws the plain, repeated blocks of a structure with hardware instancing. Each unique BlockState is baked into one
+ * small mesh per RenderType and drawn once with a buffer of block positions, so memory follows the number of unique
+ * states rather than the number of blocks. Anything whose look depends on where it is placed (tinted, randomised or
+ * connected texture models, block entities, fluids) stays on the section mesh path.
+ * <p>
+ * Instanced blocks can't cull faces against their neighbours, so inner faces show through the translucent ghost.
+ */
+public class StructureInstancer {
+    public static final ResourceLocation SHADER_ID = new ResourceLocation(Constants.MOD_ID, "ghost_instanced");
+    //Set by the platform shader registration, null until shaders have loaded
+    public static ShaderInstance instancedShader;
+    private static final int INSTANCE_STRIDE = 3 * Float.BYTES;
+    //Whether each state's model can be instanced, cleared whenever models are reloaded
+    private static final Map<BlockState, Boolean> INSTANCEABLE = new ConcurrentHashMap<>();
+    //Location of InstanceOffset in locatedShader. Shader reloads create a new instance, which is looked up again
+    private static ShaderInstance locatedShader;
+    private static int instanceOffsetLocation = -1;
+
+    //Blocks picked for instancing when the structure was laid out
+    private List<StatePos> blocks = List.of();
+    private final Map<BlockState, InstancedState> states = new IdentityHashMap<>();
+    private boolean dirty = true;
+
+    /**
+     * Whether a state looks the same wherever it is placed, and so can share one baked mesh.
+     */
+    public static boolean canInstance(BlockState state) {
+        if (instancedShader == null) {
+            return false;
+        }
+        return INSTANCEABLE.computeIfAbsent(state, StructureInstancer::hasFixedLook);
+    }
+
+    public static void clear() {
+        INSTANCEABLE.clear();
+    }
+
+    private static boolean hasFixedLook(BlockState state) {
+        if (state.hasBlockEntity()) {
+            return false;
+        }
+        BlockRenderCache.RenderClass renderClass = BlockRenderCache.get(state);
+        if (!renderClass.modelRender() || renderClass.fluid()) {
+            return false;
+        }
+        //Only vanilla model types, anything else may swap quads based on its surroundings
+        BakedModel model = Minecraft.getInstance().getBlockRenderer().getBlockModel(state);
+        if (!(model instanceof SimpleBakedModel) && !(model instanceof MultiPartBakedModel)) {
+            return false;
+        }
+        RandomSource random = RandomSource.create();
+        for (BakedQuad quad : getQuads(model, state, random)) {
+            if (quad.isTinted()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int getInstanceOffsetLocation(ShaderInstance shader) {
+        if (shader != locatedShader) {
+            locatedShader = shader;
+            instanceOffsetLocation = GL20.glGetAttribLocation(shader.getId(), "InstanceOffset");
+        }
+        return instanceOffsetLocation;
+    }
+
+    public void setBlocks(List<StatePos> blocks) {
+        this.blocks = blocks;
+        dirty = true;
+    }
+
+    public void markDirty() {
+        dirty = true;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Regroups the instanced blocks by the state they have in the fake world, baking meshes for new states and
+     * freeing the ones no longer used.
+     */
+    public void rebuild(FakeRenderingWorld world, float transparency) {
+        RenderSystem.assertOnRenderThread();
+        dirty = false;
+        Map<BlockState, List<BlockPos>> grouped = new IdentityHashMap<>();
+        for (StatePos pos : blocks) {
+            //Neighbour shapes (fences, panes, stairs) are only known once the fake world is built
+            BlockState renderState = world.getBlockStateWithoutReal(pos.pos);
+            if (renderState.isAir()) continue;
+            grouped.computeIfAbsent(renderState, state -> new ArrayList<>()).add(pos.pos);
+        }
+        var iterator = states.entrySet().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            if (!grouped.containsKey(entry.getKey())) {
+                entry.getValue().close();
+                iterator.remove();
+            }
+        }
+        for (Map.Entry<BlockState, List<BlockPos>> entry : grouped.entrySet()) {
+            InstancedState instancedState = states.get(entry.getKey());
+            if (instancedState == null) {
+                instancedState = bake(world, entry.getKey(), transparency);
+                states.put(entry.getKey(), instancedState);
+            }
+            instancedState.uploadInstances(entry.getValue());
+        }
+    }
+
+    /**
+     * Draws every instanced state that has geometry in the given layer. Expects the layer's render state to be set up already.
+     */
+    public void draw(RenderType renderType, Matrix4f modelView, Matrix4f projection) {
+        ShaderInstance shader = instancedShader;
+        if (shader == null || states.isEmpty()) {
+            return;
+        }
+        boolean applied = false;
+        for (InstancedState instancedState : states.values()) {
+            VertexBuffer mesh = instancedState.meshes.get(renderType);
+            if (mesh == null || instancedState.instanceCount == 0) {
+                continue;
+            }
+            if (!applied) {
+                applyShader(shader, modelView, projection);
+                applied = true;
+            }
+            instancedState.draw(shader, mesh);
+        }
+        if (applied) {
+            shader.clear();
+            VertexBuffer.unbind();
+        }
+    }
+
+    public void close() {
+        for (InstancedState instancedState : states.values()) {
+            instancedState.close();
+        }
+        states.clear();
+        dirty = true;
+    }
+
+    //Same uniforms VertexBuffer#drawWithShader fills in for the vanilla block shaders
+    private static void applyShader(ShaderInstance shader, Matrix4f modelView, Matrix4f projection) {
+        for (int i = 0; i < 12; i++) {
+            shader.setSampler("Sampler" + i, RenderSystem.getShaderTexture(i));
+        }
+        if (shader.MODEL_VIEW_MATRIX != null) shader.MODEL_VIEW_MATRIX.set(modelView);
+        if (shader.PROJECTION_MATRIX != null) shader.PROJECTION_MATRIX.set(projection);
+        if (shader.COLOR_MODULATOR != null) shader.COLOR_MODULATOR.set(RenderSystem.getShaderColor());
+        if (shader.FOG_START != null) shader.FOG_START.set(RenderSystem.getShaderFogStart());
+        if (shader.FOG_END != null) shader.FOG_END.set(RenderSystem.getShaderFogEnd());
+        if (shader.FOG_COLOR != null) shader.FOG_COLOR.set(RenderSystem.getShaderFogColor());
+        if (shader.FOG_SHAPE != null) shader.FOG_SHAPE.set(RenderSystem.getShaderFogShape().getIndex());
+        shader.apply();
+    }
+
+    private static List<BakedQuad> getQuads(BakedModel model, BlockState state, RandomSource random) {
+        List<BakedQuad> quads = new ArrayList<>();
+        for (Direction direction : Direction.values()) {
+            random.setSeed(42L);
+            quads.addAll(model.getQuads(state, direction, random));
+        }
+        random.setSeed(42L);
+        quads.addAll(model.getQuads(state, null, random));
+        return quads;
+    }
+
+    //Bakes the state at the origin, lit and shaded the same way the section meshes are
+    private static InstancedState bake(FakeRenderingWorld world, BlockState state, float transparency) {
+        BakedModel model = Minecraft.getInstance().getBlockRenderer().getBlockModel(state);
+        List<BakedQuad> quads = getQuads(model, state, RandomSource.create());
+        PoseStack.Pose pose = new PoseStack().last();
+        int[] lights = {LightTexture.FULL_BRIGHT, LightTexture.FULL_BRIGHT, LightTexture.FULL_BRIGHT, LightTexture.FULL_BRIGHT};
+        InstancedState instancedState = new InstancedState();
+        for (RenderType renderType : BlockRenderCache.get(state).renderTypes()) {
+            //Same swap as StructureRenderer#tesselateBlocks so instanced glass matches meshed glass
+            if (renderType.equals(RenderType.cutout()) && state.getShape(EmptyBlockGetter.INSTANCE, BlockPos.ZERO).equals(Shapes.block()))
+                renderType = RenderType.translucent();
+            if (instancedState.meshes.containsKey(renderType))
+                continue;
+            BufferBuilder bufferBuilder = new BufferBuilder(quads.size() * 4 * DefaultVertexFormat.BLOCK.getVertexSize());
+            bufferBuilder.begin(VertexFormat.Mode.QUADS, DefaultVertexFormat.BLOCK);
+            DireVertexConsumer consumer = new DireVertexConsumer(bufferBuilder, transparency);
+            for (BakedQuad quad : quads) {
+                float shade = world.getShade(quad.getDirection(), quad.isShade());
+                consumer.putBulkData(pose, quad, new float[]{shade, shade, shade, shade}, 1f, 1f, 1f, lights, OverlayTexture.NO_OVERLAY, false);
+            }
+            BufferBuilder.RenderedBuffer renderedBuffer = bufferBuilder.end();
+            if (renderedBuffer.drawState().vertexCount() == 0) {
+                renderedBuffer.release();
+                continue;
+            }
+            VertexBuffer vertexBuffer = new VertexBuffer(VertexBuffer.Usage.STATIC);
+            vertexBuffer.bind();
+            vertexBuffer.upload(renderedBuffer);
+            VertexBuffer.unbind();
+            instancedState.meshes.put(renderType, vertexBuffer);
+        }
+        return instancedState;
+    }
+
+    private static class InstancedState {
+        private final Map<RenderType, VertexBuffer> meshes = new HashMap<>();
+        //Shared by all layers of the state
+        private int instanceBuffer = -1;
+        private int instanceCount;
+
+        private void uploadInstances(List<BlockPos> positions) {
+            ByteBuffer offsets = MemoryUtil.memAlloc(positions.size() * INSTANCE_STRIDE);
+            try {
+                for (BlockPos pos : positions) {
+                    offsets.putFloat(pos.getX()).putFloat(pos.getY()).putFloat(pos.getZ());
+                }
+                offsets.flip();
+                if (instanceBuffer == -1) {
+                    instanceBuffer = GlStateManager._glGenBuffers();
+                }
+                GlStateManager._glBindBuffer(GL15.GL_ARRAY_BUFFER, instanceBuffer);
+                GlStateManager._glBufferData(GL15.GL_ARRAY_BUFFER, offsets, GL15.GL_STATIC_DRAW);
+                GlStateManager._glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+                instanceCount = positions.size();
+            } finally {
+                MemoryUtil.memFree(offsets);
+            }
+        }
+
+        private void draw(ShaderInstance shader, VertexBuffer mesh) {
+            VertexBufferAccessor accessor = (VertexBufferAccessor) mesh;
+            int location = getInstanceOffsetLocation(shader);
+            if (location < 0) {
+                return;
+            }
+            mesh.bind();
+            GlStateManager._glBindBuffer(GL15.GL_ARRAY_BUFFER, instanceBuffer);
+            GL20.glEnableVertexAttribArray(location);
+            GL20.glVertexAttribPointer(location, 3, GL11.GL_FLOAT, false, INSTANCE_STRIDE, 0L);
+            GL33.glVertexAttribDivisor(location, 1);
+            GL31.glDrawElementsInstanced(accessor.getMode().asGLMode, accessor.getIndexCount(), accessor.getIndexType().asGLType, 0L, instanceCount);
+            GL33.glVertexAttribDivisor(location, 0);
+            GL20.glDisableVertexAttribArray(location);
+        }
+
+        private void close() {
+            for (VertexBuffer mesh : meshes.values()) {
+                mesh.close();
+            }
+            meshes.clear();
+            if (instanceBuffer != -1) {
+                RenderSystem.glDeleteBuffers(instanceBuffer);
+                instanceBuffer = -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.hollingsworth.schematic.client.renderer;
+
+import com.hollingsworth.schematic.Constants;
+import com.hollingsworth.schematic.mixin.SpriteContentsAccessor;
+import com.mojang.blaze3d.platform.NativeImage;
+import com.mojang.blaze3d.vertex.BufferBuilder;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.block.model.BakedQuad;
+import net.minecraft.client.renderer.texture.TextureAtlasSprite;
+import net.minecraft.client.resources.model.BakedModel;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.util.RandomSource;
+import net.minecraft.world.level.block.state.BlockState;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds the coloured level of detail for a structure section: every visible block face is reduced to the average
+ * colour of its texture, and coplanar faces of the same colour are greedily merged into as few quads as possible.
+ * Safe to run on mesh building threads.
+ */
+public class StructureLodMesher {
+    private static final Direction[] DIRECTIONS = Direction.values();
+    //Both are filled lazily and cleared on resource reload along with the models and atlases they come from
+    private static final Map<ResourceLocation, Integer> SPRITE_COLORS = new ConcurrentHashMap<>();
+    private static final Map<BlockState, FaceColors> FACE_COLORS = new ConcurrentHashMap<>();
+
+    public static void clear() {
+        SPRITE_COLORS.clear();
+        FACE_COLORS.clear();
+    }
+
+    /**
+     * @return The section's faces as POSITION_COLOR quads in structure coordinates, or null if nothing is visible.
+     */
+    public static BufferBuilder.RenderedBuffer build(FakeRenderingWorld world, StructureSection section, List<StatePos> blocks, float transparency, BufferBuilder builder) {
+        int originX = (int) section.bounds.minX;
+        int originY = (int) section.bounds.minY;
+        int originZ = (int) section.bounds.minZ;
+        BlockState[] grid = new BlockState[16 * 16 * 16];
+        for (StatePos pos : blocks) {
+            grid[index(pos.pos.getX() - originX, pos.pos.getY() - originY, pos.pos.getZ() - originZ)] = pos.state;
+        }
+
+        int alpha = (int) (transparency * 255);
+        int[] mask = new int[16 * 16];
+        int[] cell = new int[3];
+        BlockPos.MutableBlockPos structurePos = new BlockPos.MutableBlockPos();
+        BlockPos.MutableBlockPos neighbourPos = new BlockPos.MutableBlockPos();
+        builder.begin(VertexFormat.Mode.QUADS, DefaultVertexFormat.POSITION_COLOR);
+        for (Direction direction : DIRECTIONS) {
+            int n = direction.getAxis().ordinal();
+            int u = (n + 1) % 3;
+            int v = (n + 2) % 3;
+            float shade = world.getShade(direction, true);
+            for (int slice = 0; slice < 16; slice++) {
+                boolean any = false;
+                for (int j = 0; j < 16; j++) {
+                    for (int i = 0; i < 16; i++) {
+                        cell[n] = slice;
+                        cell[u] = i;
+                        cell[v] = j;
+                        BlockState state = grid[index(cell[0], cell[1], cell[2])];
+                        int color = 0;
+                        if (state != null) {
+                            structurePos.set(originX + cell[0], originY + cell[1], originZ + cell[2]);
+                            neighbourPos.setWithOffset(structurePos, direction);
+                            BlockState neighbour = world.getBlockStateWithoutReal(neighbourPos);
+                            if (!neighbour.isSolidRender(world, neighbourPos)) {
+                                color = getFaceColor(world, state, structurePos, direction, shade, alpha);
+                            }
+                        }
+                        mask[i + j * 16] = color;
+                        any |= color != 0;
+                    }
+                }
+                if (any) {
+                    mergeSlice(builder, mask, direction, n, u, v, slice, originX, originY, originZ);
+                }
+            }
+        }
+        BufferBuilder.RenderedBuffer renderedBuffer = builder.end();
+        if (renderedBuffer.drawState().vertexCount() == 0) {
+            renderedBuffer.release();
+            return null;
+        }
+        return renderedBuffer;
+    }
+
+    //Greedily grows each face into the widest, then tallest, rectangle of the same colour
+    private static void mergeSlice(BufferBuilder builder, int[] mask, Direction direction, int n, int u, int v, int slice, int originX, int originY, int originZ) {
+        boolean positive = direction.getAxisDirection() == Direction.AxisDirection.POSITIVE;
+        float plane = slice + (positive ? 1 : 0);
+        for (int j = 0; j < 16; j++) {
+            for (int i = 0; i < 16; ) {
+                int color = mask[i + j * 16];
+                if (color == 0) {
+                    i++;
+                    continue;
+                }
+                int width = 1;
+                while (i + width < 16 && mask[i + width + j * 16] == color) width++;
+                int height = 1;
+                grow:
+                while (j + height < 16) {
+                    for (int k = 0; k < width; k++) {
+                        if (mask[i + k + (j + height) * 16] != color) break grow;
+                    }
+                    height++;
+                }
+                for (int h = 0; h < height; h++) {
+                    for (int k = 0; k < width; k++) {
+                        mask[i + k + (j + h) * 16] = 0;
+                    }
+                }
+                float[][] corners = {{i, j}, {i + width, j}, {i + width, j + height}, {i, j + height}};
+                //u x v points along the positive axis, so the corners are counter clockwise from that side
+                for (int c = 0; c < 4; c++) {
+                    float[] corner = corners[positive ? c : 3 - c];
+                    float[] vertex = new float[3];
+                    vertex[n] = plane;
+                    vertex[u] = corner[0];
+                    vertex[v] = corner[1];
+                    builder.vertex(originX + vertex[0], originY + vertex[1], originZ + vertex[2])
+                            .color((color >> 16) & 0xFF, (color >> 8) & 0xFF, color & 0xFF, (color >>> 24) & 0xFF)
+                            .endVertex();
+                }
+                i += width;
+            }
+        }
+    }
+
+    private static int getFaceColor(FakeRenderingWorld world, BlockState state, BlockPos pos, Direction direction, float shade, int alpha) {
+        FaceColors faceColors = FACE_COLORS.computeIfAbsent(state, StructureLodMesher::computeFaceColors);
+        int face = direction.get3DDataValue();
+        int color = faceColors.colors[face];
+        int tintIndex = faceColors.tintIndices[face];
+        if (tintIndex != -1) {
+            color = multiply(color, Minecraft.getInstance().getBlockColors().getColor(state, world, pos, tintIndex));
+        }
+        int r = (int) (((color >> 16) & 0xFF) * shade);
+        int g = (int) (((color >> 8) & 0xFF) * shade);
+        int b = (int) ((color & 0xFF) * shade);
+        //Keep the alpha non zero so a black face is still told apart from no face in the mask
+        return (Math.max(alpha, 1) << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private static FaceColors computeFaceColors(BlockState state) {
+        BakedModel model = Minecraft.getInstance().getBlockRenderer().getBlockModel(state);
+        RandomSource random = RandomSource.create();
+        int[] colors = new int[6];
+        int[] tintIndices = new int[6];
+        for (Direction direction : DIRECTIONS) {
+            random.setSeed(42L);
+            List<BakedQuad> quads = model.getQuads(state, direction, random);
+            if (quads.isEmpty()) {
+                random.setSeed(42L);
+                quads = model.getQuads(state, null, random);
+            }
+            int face = direction.get3DDataValue();
+            if (quads.isEmpty()) {
+                //Fluids and the like only have a particle texture, and fluids are tinted through their block colour
+                colors[face] = getSpriteColor(model.getParticleIcon());
+                tintIndices[face] = state.getFluidState().isEmpty() ? -1 : 0;
+            } else {
+                BakedQuad quad = quads.get(0);
+                colors[face] = getSpriteColor(quad.getSprite());
+                tintIndices[face] = quad.getTintIndex();
+            }
+        }
+        return new FaceColors(colors, tintIndices);
+    }
+
+    private static int getSpriteColor(TextureAtlasSprite sprite) {
+        return SPRITE_COLORS.computeIfAbsent(sprite.contents().name(), name -> averageColor(sprite));
+    }
+
+    //Average of the opaque pixels of the sprite's first frame
+    private static int averageColor(TextureAtlasSprite sprite) {
+        try {
+            NativeImage image = ((SpriteContentsAccessor) sprite.contents()).getOriginalImage();
+            int width = sprite.contents().width();
+            int height = sprite.contents().height();
+            long r = 0, g = 0, b = 0, count = 0;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    //NativeImage pixels are ABGR
+                    int pixel = image.getPixelRGBA(x, y);
+                    if ((pixel >>> 24) == 0) continue;
+                    r += pixel & 0xFF;
+                    g += (pixel >> 8) & 0xFF;
+                    b += (pixel >> 16) & 0xFF;
+                    count++;
+                }
+            }
+            if (count == 0) {
+                return 0xFFFFFF;
+            }
+            return (int) (r / count) << 16 | (int) (g / count) << 8 | (int) (b / count);
+        } catch (Exception e) {
+            Constants.LOG.debug("Could not average sprite " + sprite.contents().name(), e);
+            return 0x808080;
+        }
+    }
+
+    private static int multiply(int color, int tint) {
+        int r = ((color >> 16) & 0xFF) * ((tint >> 16) & 0xFF) / 255;
+        int g = ((color >> 8) & 0xFF) * ((tint >> 8) & 0xFF) / 255;
+        int b = (color & 0xFF) * (tint & 0xFF) / 255;
+        return r << 16 | g << 8 | b;
+    }
+
+    private static int index(int x, int y, int z) {
+        return (y << 8) | (z << 4) | x;
+    }
+
+    private record FaceColors(int[] colors, int[] tintIndices) {
+    }
+}
@@ -0,0 +1,234 @@
+package com.hollingsworth.schematic.client.renderer;
+
+import com.hollingsworth.schematic.Constants;
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.vertex.BufferBuilder;
+import com.mojang.blaze3d.vertex.VertexSorting;
+import net.minecraft.Util;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.core.BlockPos;
+import net.minecraft.util.RandomSource;
+import net.minecraft.world.phys.Vec3;
+import org.joml.Vector3f;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds structure section meshes on background threads, similar to how vanilla compiles chunk sections.
+ * The fake world is built and snapshotted on the render thread, tesselation and sorting happen on workers (one task per section),
+ * and only the final upload to the section's vertex buffers is handed back to the render thread.
+ */
+public class StructureMeshCompiler {
+    //Blocks tesselated between progress updates and cancellation checks
+    private static final int BATCH_SIZE = 512;
+    //Builder packs hold large native buffers, so keep them around between compiles instead of reallocating
+    private static final Queue<Map<RenderType, DireBufferBuilder>> BUILDER_POOL = new ConcurrentLinkedQueue<>();
+    private static final Queue<BufferBuilder> LOD_BUILDER_POOL = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Queues a rebuild of one section against the structure's current fake world, replacing any build already running for it.
+     */
+    public static CompileTask compile(StructureRenderData data, StructureSection section, BlockPos renderPos, float transparency) {
+        RenderSystem.assertOnRenderThread();
+        if (section.compileTask != null) {
+            section.compileTask.cancel();
+        }
+        FakeRenderingWorld world = data.fakeRenderingWorld;
+        List<StatePos> blocks = section.blocks;
+
+        Vec3 projectedView = Minecraft.getInstance().gameRenderer.getMainCamera().getPosition();
+        //Meshes are in structure coordinates, so sort against the camera as seen from there
+        Vec3 subtracted = data.transform.invert(projectedView.subtract(renderPos.getX(), renderPos.getY(), renderPos.getZ()));
+        Vector3f sortPos = new Vector3f((float) subtracted.x, (float) subtracted.y, (float) subtracted.z);
+        boolean greedy = StructureRenderer.greedyMeshing && StructureGreedyMesher.isAvailable();
+
+        CompileTask task = new CompileTask(blocks.size());
+        section.compileTask = task;
+        section.markBuilt();
+        CompletableFuture.supplyAsync(() -> build(task, world, section, blocks, renderPos, transparency, sortPos, greedy), Util.backgroundExecutor())
+                .whenCompleteAsync((result, err) -> upload(data, section, task, result, err), Minecraft.getInstance());
+        return task;
+    }
+
+    /**
+     * Queues a rebuild of a section's coloured level of detail, see {@link StructureLodMesher}.
+     */
+    public static CompileTask compileLod(StructureRenderData data, StructureSection section, float transparency) {
+        RenderSystem.assertOnRenderThread();
+        if (section.lodTask != null) {
+            section.lodTask.cancel();
+        }
+        FakeRenderingWorld world = data.fakeRenderingWorld;
+        List<StatePos> blocks = section.blocks;
+        CompileTask task = new CompileTask(blocks.size());
+        section.lodTask = task;
+        section.markLodBuilt();
+        CompletableFuture.supplyAsync(() -> buildLod(task, world, section, blocks, transparency), Util.backgroundExecutor())
+                .whenCompleteAsync((result, err) -> uploadLod(data, section, task, result, err), Minecraft.getInstance());
+        return task;
+    }
+
+    private static CompiledLod buildLod(CompileTask task, FakeRenderingWorld world, StructureSection section, List<StatePos> blocks, float transparency) {
+        BufferBuilder builder = LOD_BUILDER_POOL.poll();
+        if (builder == null) {
+            builder = new BufferBuilder(DireRenderTypes.GhostLod.bufferSize());
+        }
+        try {
+            BufferBuilder.RenderedBuffer buffer = task.isCancelled() ? null : StructureLodMesher.build(world, section, blocks, transparency, builder);
+            task.compiledBlocks.set(blocks.size());
+            return new CompiledLod(builder, buffer);
+        } catch (Exception e) {
+            if (builder.building()) {
+                builder.end().release();
+            }
+            LOD_BUILDER_POOL.add(builder);
+            throw e;
+        }
+    }
+
+    private static void uploadLod(StructureRenderData data, StructureSection section, CompileTask task, CompiledLod lod, Throwable err) {
+        if (err != null) {
+            Constants.LOG.error("Failed to build structure level of detail for " + data.name, err);
+        }
+        if (section.lodTask == task) {
+            section.lodTask = null;
+        }
+        if (lod == null) {
+            return;
+        }
+        if (task.isCancelled()) {
+            if (lod.buffer != null) {
+                lod.buffer.release();
+            }
+        } else {
+            section.uploadLod(lod.buffer);
+        }
+        LOD_BUILDER_POOL.add(lod.builder);
+    }
+
+    private static CompiledMesh build(CompileTask task, FakeRenderingWorld world, StructureSection section, List<StatePos> statePosCache, BlockPos renderPos,
+                                      float transparency, Vector3f sortPos, boolean greedy) {
+        Map<RenderType, DireBufferBuilder> builders = acquireBuilders();
+        try {
+            RandomSource random = RandomSource.create();
+            if (greedy) {
+                StructureGreedyMesher.build(world, section, statePosCache, transparency, StructureRenderer.getBuffer(builders, DireRenderTypes.GhostGreedy));
+            }
+            for (int i = 0; i < statePosCache.size(); i += BATCH_SIZE) {
+                if (task.isCancelled()) {
+                    discard(builders);
+                    return null;
+                }
+                List<StatePos> batch = statePosCache.subList(i, Math.min(i + BATCH_SIZE, statePosCache.size()));
+                StructureRenderer.tesselateBlocks(world, batch, renderPos, transparency, builders, random, greedy);
+                task.compiledBlocks.addAndGet(batch.size());
+            }
+            Map<RenderType, BufferBuilder.RenderedBuffer> buffers = new HashMap<>();
+            Map<RenderType, BufferBuilder.SortState> sortStates = new HashMap<>();
+            for (RenderType renderType : builders.keySet()) {
+                DireBufferBuilder direBufferBuilder = StructureRenderer.getBuffer(builders, renderType);
+                //Merged quads span many blocks, so sorting them by their centres would mean nothing
+                if (renderType != DireRenderTypes.GhostGreedy) {
+                    direBufferBuilder.setQuadSorting(VertexSorting.byDistance(sortPos));
+                    sortStates.put(renderType, direBufferBuilder.getSortState());
+                }
+                buffers.put(renderType, direBufferBuilder.end());
+            }
+            return new CompiledMesh(builders, buffers, sortStates);
+        } catch (Exception e) {
+            discard(builders);
+            throw e;
+        }
+    }
+
+    private static void upload(StructureRenderData data, StructureSection section, CompileTask task, CompiledMesh mesh, Throwable err) {
+        if (err != null) {
+            Constants.LOG.error("Failed to build structure mesh for " + data.name, err);
+        }
+        if (mesh == null) {
+            if (section.compileTask == task) {
+                section.compileTask = null;
+                //Built was set when the task was queued, a failed build has to be tried again
+                if (err != null) {
+                    section.markDirty();
+                }
+            }
+            return;
+        }
+        if (task.isCancelled() || section.compileTask != task) {
+            mesh.release();
+            return;
+        }
+        for (Map.Entry<RenderType, BufferBuilder.RenderedBuffer> entry : mesh.buffers.entrySet()) {
+            section.upload(entry.getKey(), entry.getValue());
+        }
+        section.sortStates = mesh.sortStates;
+        section.compileTask = null;
+        BUILDER_POOL.add(mesh.builders);
+    }
+
+    private static Map<RenderType, DireBufferBuilder> acquireBuilders() {
+        Map<RenderType, DireBufferBuilder> builders = BUILDER_POOL.poll();
+        if (builders == null) {
+            builders = new HashMap<>();
+            for (RenderType renderType : RenderType.chunkBufferLayers()) {
+                builders.put(renderType, new DireBufferBuilder(renderType.bufferSize()));
+            }
+            builders.put(DireRenderTypes.GhostGreedy, new DireBufferBuilder(DireRenderTypes.GhostGreedy.bufferSize()));
+        }
+        return builders;
+    }
+
+    //Finish and drop anything still building so the pack can be reused
+    private static void discard(Map<RenderType, DireBufferBuilder> builders) {
+        for (DireBufferBuilder builder : builders.values()) {
+            if (builder.building()) {
+                builder.end().release();
+            }
+        }
+        BUILDER_POOL.add(builders);
+    }
+
+    public static class CompileTask {
+        public final int totalBlocks;
+        private final AtomicInteger compiledBlocks = new AtomicInteger();
+        private volatile boolean cancelled;
+
+        public CompileTask(int totalBlocks) {
+            this.totalBlocks = totalBlocks;
+        }
+
+        public float getProgress() {
+            return totalBlocks == 0 ? 1f : compiledBlocks.get() / (float) totalBlocks;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private record CompiledLod(BufferBuilder builder, @Nullable BufferBuilder.RenderedBuffer buffer) {
+    }
+
+    private record CompiledMesh(Map<RenderType, DireBufferBuilder> builders, Map<RenderType, BufferBuilder.RenderedBuffer> buffers,
+                                Map<RenderType, BufferBuilder.SortState> sortStates) {
+        void release() {
+            for (BufferBuilder.RenderedBuffer buffer : buffers.values()) {
+                buffer.release();
+            }
+            BUILDER_POOL.add(builders);
+        }
+    }
+}
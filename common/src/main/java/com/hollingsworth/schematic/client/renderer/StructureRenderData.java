@@ -1,32 +1,61 @@
 package com.hollingsworth.schematic.client.renderer;
 
+import com.hollingsworth.schematic.Constants;
 import com.hollingsworth.schematic.mixin.StructureTemplateAccessor;
-import com.mojang.blaze3d.vertex.BufferBuilder;
-import net.minecraft.client.renderer.RenderType;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.Util;
+import net.minecraft.client.Minecraft;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.core.Vec3i;
 import net.minecraft.world.level.block.Mirror;
 import net.minecraft.world.level.block.Rotation;
 import net.minecraft.world.level.levelgen.structure.BoundingBox;
 import net.minecraft.world.level.levelgen.structure.templatesystem.StructurePlaceSettings;
 import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplate;
+import net.minecraft.world.phys.Vec3;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 public class StructureRenderData {
+    //The template's blocks in their original orientation. Never rotated or mirrored, see transform
     public ArrayList<StatePos> statePosCache;
-    public int sortCounter;
     public BoundingBox boundingBox;
     public BlockPos anchorPos;
-    public Map<RenderType, BufferBuilder.SortState> sortStates = new HashMap<>();
+    //16x16x16 chunks of the structure, each with its own GPU buffers, keyed by their structure relative SectionPos
+    public final Long2ObjectMap<StructureSection> sections = new Long2ObjectOpenHashMap<>();
+    //Blocks without a baked model (chests and the like), drawn through their block entity renderer every frame instead of meshed
+    public List<StatePos> blockEntityBlocks = List.of();
+    //Repeated plain blocks drawn with instancing when StructureRenderer#instancedRendering is on
+    public final StructureInstancer instancer = new StructureInstancer();
+    //Set when block positions moved and the blocks need to be regrouped into sections
+    private boolean layoutDirty = true;
     public String name;
     public String blockprintsId;
     public FakeRenderingWorld fakeRenderingWorld;
-    public boolean updateRender;
+    //The fake world being built off thread for the current placement. Sections wait for it before they compile
+    public CompletableFuture<FakeRenderingWorld> pendingWorld;
+    // The origin the current mesh was built against, so we know when the anchor moves
+    public BlockPos renderOrigin;
     public StructureTemplate structureTemplate;
     public Rotation rotation;
     public Mirror mirror;
+    //Rotation and mirror applied to the meshes at draw time
+    public StructureTransform transform = StructureTransform.IDENTITY;
+    //Camera position relative to the structure's centre at the last translucent resort, and the resort in flight
+    public Vec3 lastSortOffset;
+    public TranslucentSorter.SortTask sortTask;
+    //Bumped whenever something changes that invalidates the cached mesh
+    private int generation;
+    private int builtGeneration = -1;
+    //Set when the fake world has to be rebuilt from scratch rather than just moved to a new rotation or mirror
+    private boolean worldStale = true;
+    //Bumped by every rotate or mirror, so an edge refresh that finishes after a newer one is dropped
+    private int edgeVersion;
 
     public StructureRenderData(StructureTemplate structureTemplate, String name, String blockprintsId){
         var accessor = (StructureTemplateAccessor)structureTemplate;
@@ -43,21 +72,242 @@ public class StructureRenderData {
         boundingBox = structureTemplate.getBoundingBox(new StructurePlaceSettings(), new BlockPos(0, 0, 0));
         this.name = name;
         this.blockprintsId = blockprintsId;
-        updateRender = true;
         rotation = Rotation.NONE;
         mirror = Mirror.NONE;
     }
 
+    /**
+     * Rotating and mirroring swap the draw transform and bounds, the blocks and the interior meshes are left alone.
+     * Only the structure's edges see the real world, so only they are refreshed, see {@link #refreshEdges}.
+     */
     public void rotate(Rotation rotateBy){
         rotation = rotation.getRotated(rotateBy);
-        statePosCache = StatePos.rotate(statePosCache, new ArrayList<>(), rotateBy);
-        boundingBox = structureTemplate.getBoundingBox(new StructurePlaceSettings().setRotation(rotation), new BlockPos(0, 0, 0));
+        updateTransform();
     }
 
     public void mirror(boolean mirror){
         this.mirror = mirror ? Mirror.FRONT_BACK : Mirror.NONE;
+        updateTransform();
+    }
+
+    private void updateTransform(){
+        transform = new StructureTransform(rotation, mirror);
+        boundingBox = structureTemplate.getBoundingBox(new StructurePlaceSettings().setMirror(mirror).setRotation(rotation), new BlockPos(0, 0, 0));
+        //Invalidates the build without marking the world stale, so the next build only refreshes the edges
+        generation++;
+    }
+
+    /**
+     * Moves the fake world's real world lookups to the current transform and bounds. The neighbour shapes of the blocks
+     * on the structure's faces are worked out again off thread, then only the sections along the edge are rebuilt.
+     */
+    void refreshEdges(){
+        FakeRenderingWorld world = fakeRenderingWorld;
+        if(world == null){
+            return;
+        }
+        world.setTransform(transform, boundingBox);
+        instancer.markDirty();
+        Vec3i size = structureTemplate.getSize();
+        int version = ++edgeVersion;
+        CompletableFuture.supplyAsync(() -> world.edgeShapeUpdates(size), Util.backgroundExecutor()).whenCompleteAsync((updates, err) -> {
+            if(err != null){
+                Constants.LOG.error("Failed to update the edges of " + name, err);
+            }
+            //A newer rotate or a new fake world takes care of it
+            if(fakeRenderingWorld != world || edgeVersion != version){
+                return;
+            }
+            if(updates != null){
+                for(StatePos update : updates){
+                    world.setBlock(update.pos, update.state, 0);
+                }
+            }
+            markEdgeSectionsDirty(size);
+        }, Minecraft.getInstance());
+    }
+
+    private void markEdgeSectionsDirty(Vec3i size){
+        int maxX = SectionPos.blockToSectionCoord(size.getX() - 1);
+        int maxY = SectionPos.blockToSectionCoord(size.getY() - 1);
+        int maxZ = SectionPos.blockToSectionCoord(size.getZ() - 1);
+        for(var entry : sections.long2ObjectEntrySet()){
+            long key = entry.getLongKey();
+            int x = SectionPos.x(key);
+            int y = SectionPos.y(key);
+            int z = SectionPos.z(key);
+            if(x == 0 || x == maxX || y == 0 || y == maxY || z == 0 || z == maxZ){
+                entry.getValue().markDirty();
+            }
+        }
+    }
+
+    public void setAnchorPos(BlockPos anchorPos){
+        if(Objects.equals(this.anchorPos, anchorPos)){
+            return;
+        }
+        this.anchorPos = anchorPos;
+        markDirty();
+    }
+
+    /**
+     * Moves the mesh to a new origin, invalidating it if the origin actually changed.
+     */
+    public void updateRenderOrigin(BlockPos renderOrigin){
+        if(renderOrigin.equals(this.renderOrigin)){
+            return;
+        }
+        this.renderOrigin = renderOrigin;
+        markDirty();
+    }
+
+    /**
+     * Called when a block in the real world changes. Blocks directly around the structure affect its connected
+     * textures, lighting and neighbour shapes, so the sections next to the change are rebuilt.
+     * The bounds are in placed coordinates, the fake world and sections in structure coordinates.
+     */
+    public void onWorldBlockChanged(BlockPos worldPos){
+        if(renderOrigin == null || boundingBox == null){
+            return;
+        }
+        int x = worldPos.getX() - renderOrigin.getX();
+        int y = worldPos.getY() - renderOrigin.getY();
+        int z = worldPos.getZ() - renderOrigin.getZ();
+        if(x >= boundingBox.minX() - 1 && x <= boundingBox.maxX() + 1
+                && y >= boundingBox.minY() - 1 && y <= boundingBox.maxY() + 1
+                && z >= boundingBox.minZ() - 1 && z <= boundingBox.maxZ() + 1){
+            BlockPos localPos = transform.invert(new BlockPos(x, y, z));
+            if(fakeRenderingWorld != null){
+                fakeRenderingWorld.refreshNeighbourShapes(localPos);
+            }else if(pendingWorld != null){
+                //The world being built copied the real world before this change
+                pendingWorld.thenAcceptAsync(world -> world.refreshNeighbourShapes(localPos), Minecraft.getInstance());
+            }
+            instancer.markDirty();
+            for(BlockPos pos : BlockPos.betweenClosed(localPos.offset(-1, -1, -1), localPos.offset(1, 1, 1))){
+                StructureSection section = sections.get(StructureSection.keyOf(pos));
+                if(section != null){
+                    section.markDirty();
+                }
+            }
+        }
+    }
+
+    /**
+     * Regroups blocks into sections if they moved, and flags every section for a rebuild. Blocks are partitioned once
+     * here into meshed blocks and block entity blocks, so neither the builds nor each frame have to re-filter them.
+     * Existing sections keep drawing their old mesh until the new one is uploaded.
+     */
+    public void updateSections(){
+        if(layoutDirty){
+            Long2ObjectMap<ArrayList<StatePos>> grouped = new Long2ObjectOpenHashMap<>();
+            List<StatePos> blockEntities = new ArrayList<>();
+            List<StatePos> instanced = new ArrayList<>();
+            for(StatePos statePos : statePosCache){
+                if(statePos.state.isAir()){
+                    continue;
+                }
+                BlockRenderCache.RenderClass renderClass = BlockRenderCache.get(statePos.state);
+                if(!renderClass.modelRender()){
+                    blockEntities.add(statePos);
+                }
+                if(StructureRenderer.instancedRendering && StructureInstancer.canInstance(statePos.state)){
+                    instanced.add(statePos);
+                }else if(renderClass.isMeshed()){
+                    grouped.computeIfAbsent(StructureSection.keyOf(statePos.pos), key -> new ArrayList<>()).add(statePos);
+                }
+            }
+            blockEntityBlocks = blockEntities;
+            instancer.setBlocks(instanced);
+            var iterator = sections.long2ObjectEntrySet().iterator();
+            while(iterator.hasNext()){
+                var entry = iterator.next();
+                if(!grouped.containsKey(entry.getLongKey())){
+                    entry.getValue().close();
+                    iterator.remove();
+                }
+            }
+            for(var entry : grouped.long2ObjectEntrySet()){
+                sections.computeIfAbsent(entry.getLongKey(), StructureSection::new).blocks = entry.getValue();
+            }
+            layoutDirty = false;
+        }
+        for(StructureSection section : sections.values()){
+            section.markDirty();
+        }
+    }
+
+    public boolean isCompiling(){
+        if(pendingWorld != null){
+            return true;
+        }
+        for(StructureSection section : sections.values()){
+            if(section.compileTask != null){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return How far along the running section builds are, from 0 to 1.
+     */
+    public float getCompileProgress(){
+        if(sections.isEmpty()){
+            return 1f;
+        }
+        float remaining = 0;
+        for(StructureSection section : sections.values()){
+            if(section.compileTask != null){
+                remaining += 1f - section.compileTask.getProgress();
+            }
+        }
+        return 1f - remaining / sections.size();
+    }
+
+    /**
+     * Frees the GPU buffers held by this structure. The next render will recreate and rebuild them.
+     */
+    public void close(){
+        for(StructureSection section : sections.values()){
+            section.close();
+        }
+        sections.clear();
+        if(sortTask != null){
+            sortTask.cancel();
+            sortTask = null;
+        }
+        lastSortOffset = null;
+        instancer.close();
+        blockEntityBlocks = List.of();
+        layoutDirty = true;
+        fakeRenderingWorld = null;
+        pendingWorld = null;
+        markDirty();
+    }
+
+    public void markDirty(){
+        generation++;
+        worldStale = true;
+    }
+
+    /**
+     * @return False if the fake world is only out of date by a rotate or mirror, see {@link #refreshEdges}.
+     */
+    public boolean needsNewWorld(){
+        return worldStale || (fakeRenderingWorld == null && pendingWorld == null);
+    }
+
+    public void markWorldBuilt(){
+        worldStale = false;
+    }
+
+    public boolean isDirty(){
+        return builtGeneration != generation;
+    }
 
-        boundingBox = structureTemplate.getBoundingBox(new StructurePlaceSettings().setMirror(this.mirror).setRotation(rotation), new BlockPos(0, 0, 0));
+    public void markBuilt(){
+        builtGeneration = generation;
     }
 
 }
@@ -1,20 +1,17 @@
 package com.hollingsworth.schematic.client.renderer;
 
+import com.hollingsworth.schematic.Constants;
 import com.hollingsworth.schematic.client.RaycastHelper;
 import com.hollingsworth.schematic.common.util.Color;
 import com.hollingsworth.schematic.common.util.DimPos;
-import com.hollingsworth.schematic.platform.Services;
 import com.mojang.blaze3d.systems.RenderSystem;
-import com.mojang.blaze3d.vertex.BufferBuilder;
 import com.mojang.blaze3d.vertex.PoseStack;
 import com.mojang.blaze3d.vertex.VertexBuffer;
-import com.mojang.blaze3d.vertex.VertexSorting;
 import net.minecraft.client.Minecraft;
-import net.minecraft.client.renderer.MultiBufferSource;
 import net.minecraft.client.renderer.RenderType;
 import net.minecraft.client.renderer.block.BlockRenderDispatcher;
 import net.minecraft.client.renderer.block.ModelBlockRenderer;
-import net.minecraft.client.renderer.blockentity.BlockEntityRenderDispatcher;
+import net.minecraft.client.renderer.culling.Frustum;
 import net.minecraft.client.renderer.texture.OverlayTexture;
 import net.minecraft.client.resources.model.BakedModel;
 import net.minecraft.core.BlockPos;
@@ -22,29 +19,43 @@ import net.minecraft.core.Direction;
 import net.minecraft.util.RandomSource;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.level.Level;
-import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.phys.BlockHitResult;
 import net.minecraft.world.phys.Vec3;
 import net.minecraft.world.phys.shapes.Shapes;
 import org.joml.Matrix4f;
-import org.joml.Vector3f;
+import org.lwjgl.opengl.GL11;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 
 public class StructureRenderer {
     public static ArrayList<StructureRenderData> structures = new ArrayList<>();
-    private static int sortCounter = 0;
-
-    //A map of RenderType -> DireBufferBuilder, so we can draw the different render types in proper order later
-    private static final Map<RenderType, DireBufferBuilder> builders = RenderType.chunkBufferLayers().stream().collect(Collectors.toMap((renderType) -> renderType, (type) -> new DireBufferBuilder(type.bufferSize())));
-    //A map of RenderType -> Vertex Buffer to buffer the different render types.
-    private static final Map<RenderType, VertexBuffer> vertexBuffers = RenderType.chunkBufferLayers().stream().collect(Collectors.toMap((renderType) -> renderType, (type) -> new VertexBuffer(VertexBuffer.Usage.STATIC)));
+    //Skip faces hidden behind opaque blocks of the same structure
+    public static boolean cullHiddenFaces = true;
+    //Also skip faces pressed against real world blocks. Off by default so the ghost keeps its full translucent shape against terrain
+    public static boolean cullAgainstWorld = false;
+    //Draw plain repeated blocks with hardware instancing instead of meshing them. Takes effect the next time a structure is laid out
+    public static boolean instancedRendering = false;
+    //Merge the faces of plain full cubes into large quads instead of tesselating them block by block. Takes effect on the next rebuild
+    public static boolean greedyMeshing = false;
+    //Sections smaller on screen than lodColoredBelow (as a fraction of the screen height) are drawn as flat coloured faces,
+    //and below lodOutlineBelow they are left to the structure's bounding box outline
+    public static boolean lodEnabled = true;
+    public static double lodColoredBelow = 0.25;
+    public static double lodOutlineBelow = 0.06;
+    //Structures with more blocks than this switch to the coarser levels at twice the screen size
+    public static int lodBlockCount = 200_000;
+    //Radius of the sphere around a section, used to estimate its size on screen
+    private static final double SECTION_RADIUS = 8 * Math.sqrt(3);
+    private static final List<RenderType> DRAW_ORDER = List.of(RenderType.solid(), DireRenderTypes.GhostGreedy, RenderType.cutout(), RenderType.cutoutMipped(), RenderType.translucent(), RenderType.tripwire());
 
     //Get the buffer from the map, and ensure its building
-    public static DireBufferBuilder getBuffer(RenderType renderType) {
+    public static DireBufferBuilder getBuffer(Map<RenderType, DireBufferBuilder> builders, RenderType renderType) {
         final DireBufferBuilder buffer = builders.get(renderType);
         if (!buffer.building()) {
             buffer.begin(renderType.mode(), renderType.format());
@@ -62,115 +73,153 @@ public class StructureRenderer {
         renderPos = renderPos.above();
         DimPos boundTo = new DimPos(player.level.dimension(), renderPos);
         if (boundTo != null && boundTo.levelKey().equals(player.level().dimension())) {
-            drawBoundBox(data, poseStack, boundTo.pos());
+            //While sections are compiling the box fades from yellow to blue to show progress
+            Color color = data.isCompiling() ? Color.mixColors(Color.YELLOW, Color.BLUE, data.getCompileProgress()) : Color.BLUE;
+            drawBoundBox(data, poseStack, boundTo.pos(), color);
         }
 
 
         renderPos = renderPos.above();
         //Start drawing the Render and cache it, used for both Building and Copy/Paste
-        if (shouldUpdateRender(player)) {
-            generateRender(data, player.level(), renderPos, 0.5f, data.statePosCache, vertexBuffers);
-            data.updateRender = false;
+        data.updateRenderOrigin(renderPos);
+        if (shouldUpdateRender(data)) {
+            generateRender(data, player.level(), renderPos, 0.5f, data.statePosCache);
+            data.markBuilt();
+        }
+        //Only sections touched by a change since their last build are recompiled
+        if (data.fakeRenderingWorld != null) {
+            for (StructureSection section : data.sections.values()) {
+                if (section.isDirty()) {
+                    StructureMeshCompiler.compile(data, section, renderPos, 0.5f);
+                }
+            }
+            if (data.instancer.isDirty()) {
+                data.instancer.rebuild(data.fakeRenderingWorld, 0.5f);
+            }
         }
     }
 
-    public static boolean shouldUpdateRender(Player player) {
-//        ArrayList<StatePos> buildList;
-//        BaseMode mode = GadgetNBT.getMode(gadget);
-//        BlockHitResult lookingAt = RaycastHelper.getLookingAt(player, true);
-//        BlockPos anchorPos = GadgetNBT.getAnchorPos(gadget);
-//        BlockPos renderPos = anchorPos.equals(GadgetNBT.nullPos) ? lookingAt.getBlockPos() : anchorPos;
-//        UUID gadgetUUID = GadgetNBT.getUUID(gadget);
-//
-////        if (gadget.getItem() instanceof GadgetBuilding || gadget.getItem() instanceof GadgetExchanger) {
-////            if (player.level().getBlockState(renderPos).isAir())
-////                return false;
-////            BlockState renderBlockState = GadgetNBT.getGadgetBlockState(gadget);
-////            if (renderBlockState.isAir()) return false;
-////            buildList = mode.collect(lookingAt.getDirection(), player, renderPos, renderBlockState); //Get the build list for what we're looking at
-////
-////            FakeRenderingWorld tempWorld = new FakeRenderingWorld(player.level(), buildList, renderPos); //Toss it into the fake render world
-////            if (fakeRenderingWorld != null && fakeRenderingWorld.positions.equals(tempWorld.positions)) //If they are identical, no need to update render
-////                return false;
-////
-////            //If not, we should update the cache, the UUID, and return true, meaning we need to update the render
-////            statePosCache = buildList;
-////            copyPasteUUIDCache = UUID.randomUUID(); //In case theres an existing copy/Paste render saved, nullify it
-////            return true;
-////        } else if (gadget.getItem() instanceof GadgetCopyPaste || gadget.getItem() instanceof GadgetCutPaste) {
-//            renderPos = renderPos.above();
-//            renderPos.offset(GadgetNBT.getRelativePaste(gadget));
-//            if (mode.getId().getPath().equals("paste")) { //Paste Mode Only
-//                if (!BG2DataClient.isClientUpToDate(gadget)) { //Have the BG2DataClient class check if its up to date
-//                    return false; //If not up to date, we need to return false, since theres no need to regen the render if its out of date! We'll check again next draw frame
-//                }
-//                UUID BG2ClientUUID = BG2DataClient.getCopyUUID(gadgetUUID);
-//                if (BG2ClientUUID != null && copyPasteUUIDCache.equals(BG2ClientUUID)) //If the cache this class has matches the client cache for this gadget, no need to rebuild
-//                    return false;
-//                //If we get here, the copy paste we have stored here differs from whats in the client AND the client is up to date, so rebuild!
-//                copyPasteUUIDCache = BG2ClientUUID; //Cache the new copyPasteUUID for next cycle
-//                statePosCache = BG2DataClient.getLookupFromUUID(gadgetUUID);
-//                return true; //Need a render update!
-//            }
-////        } else { //Not a gadget that needs updates
-////            return false;
-////        }
-        return true;
+    /**
+     * The mesh only needs rebuilding when the data has been invalidated since the last build was started.
+     */
+    public static boolean shouldUpdateRender(StructureRenderData data) {
+        return data.isDirty();
+    }
+
+    public static void addStructure(StructureRenderData data) {
+        structures.add(data);
+    }
+
+    /**
+     * Stops visualizing a structure and frees its GPU buffers.
+     */
+    public static void removeStructure(StructureRenderData data) {
+        structures.remove(data);
+        data.close();
+    }
+
+    /**
+     * Invalidates any structure whose surroundings include the changed position in the real world.
+     */
+    public static void onBlockChanged(BlockPos pos) {
+        for (StructureRenderData data : structures) {
+            data.onWorldBlockChanged(pos);
+        }
     }
 
     /**
-     * This method creates a Map<RenderType, VertexBuffer> when given an ArrayList<StatePos> statePosCache - its used both here to draw in-game AND in the TemplateManagerGUI.java class
+     * Rebuilds the fake world for the structure and flags all of its sections for a rebuild. Tesselation then happens
+     * off-thread per section in {@link StructureMeshCompiler}, and old section meshes keep drawing until replaced.
+     * The fake world is filled on the background executor, and the sections wait for it without a fake world to compile
+     * against. If the structure was only rotated or mirrored, just the sections along its edge are rebuilt.
      */
-    public static void generateRender(StructureRenderData data, Level level, BlockPos renderPos, float transparency, ArrayList<StatePos> statePosCache, Map<RenderType, VertexBuffer> vertexBuffers) {
+    public static void generateRender(StructureRenderData data, Level level, BlockPos renderPos, float transparency, ArrayList<StatePos> statePosCache) {
         if (statePosCache == null || statePosCache.isEmpty()) return;
-        data.fakeRenderingWorld = new FakeRenderingWorld(level, statePosCache, renderPos);
+        if (!data.needsNewWorld()) {
+            data.refreshEdges();
+            return;
+        }
+        data.updateSections();
+        data.fakeRenderingWorld = null;
+        CompletableFuture<FakeRenderingWorld> world = FakeRenderingWorld.build(level, statePosCache, renderPos, data.boundingBox, data.transform);
+        data.pendingWorld = world;
+        data.markWorldBuilt();
+        world.whenCompleteAsync((built, err) -> {
+            //Replaced by a newer build or the structure was removed
+            if (data.pendingWorld != world) {
+                return;
+            }
+            data.pendingWorld = null;
+            if (err != null) {
+                Constants.LOG.error("Failed to build the fake world for " + data.name, err);
+                return;
+            }
+            data.fakeRenderingWorld = built;
+            //Rotated or mirrored while it was being built
+            if (built.getTransform() != data.transform) {
+                data.refreshEdges();
+            }
+        }, Minecraft.getInstance());
+    }
+
+    /**
+     * Tesselates a batch of blocks from the fake world into the given builders. Safe to call from mesh building threads
+     * as long as the fake world was created with a snapshot of the real world.
+     * @param greedy Skip the blocks {@link StructureGreedyMesher} has already merged
+     */
+    public static void tesselateBlocks(FakeRenderingWorld world, List<StatePos> statePosCache, BlockPos renderPos, float transparency, Map<RenderType, DireBufferBuilder> builders, RandomSource random, boolean greedy) {
         PoseStack matrix = new PoseStack(); //Create a new matrix stack for use in the buffer building process
         BlockRenderDispatcher dispatcher = Minecraft.getInstance().getBlockRenderer();
         ModelBlockRenderer modelBlockRenderer = dispatcher.getModelRenderer();
-        final RandomSource random = RandomSource.create();
         //Iterate through the state pos cache and start drawing to the VertexBuffers - skip modelRenders(like chests) - include fluids (even though they don't work yet)
-        for (StatePos pos : statePosCache.stream().filter(pos -> isModelRender(pos.state) || !pos.state.getFluidState().isEmpty()).toList()) {
-            BlockState renderState = data.fakeRenderingWorld.getBlockStateWithoutReal(pos.pos);
-            if (renderState.isAir()) continue;
+        for (StatePos pos : statePosCache) {
+            if (!BlockRenderCache.get(pos.state).isMeshed()) continue;
+            BlockState renderState = world.getBlockStateWithoutReal(pos.pos);
+            if (renderState.isAir() || (greedy && StructureGreedyMesher.canMerge(renderState))) continue;
 
             BakedModel ibakedmodel = dispatcher.getBlockModel(renderState);
+            int culledFaces = cullHiddenFaces ? getCulledFaces(world, renderState, pos.pos) : 0;
+            BakedModel tesselatedModel = culledFaces == 0 ? ibakedmodel : new CullingBakedModel(ibakedmodel, culledFaces);
             matrix.pushPose();
             matrix.translate(pos.pos.getX(), pos.pos.getY(), pos.pos.getZ());
 
-            for (RenderType renderType : Services.PLATFORM.getRenderTypes(ibakedmodel, renderState, random)) {
+            for (RenderType renderType : BlockRenderCache.get(renderState).renderTypes()) {
                 //Flowers render weirdly so we use a custom renderer to make them look better. Glass and Flowers are both cutouts, so we only want this for non-cube blocks
-                if (renderType.equals(RenderType.cutout()) && renderState.getShape(level, pos.pos.offset(renderPos)).equals(Shapes.block()))
+                if (renderType.equals(RenderType.cutout()) && renderState.getShape(world, pos.pos).equals(Shapes.block()))
                     renderType = RenderType.translucent();
-                DireVertexConsumer direVertexConsumer = new DireVertexConsumer(getBuffer(renderType), transparency);
+                DireVertexConsumer direVertexConsumer = new DireVertexConsumer(getBuffer(builders, renderType), transparency);
                 //Use tesselateBlock to skip the block.isModel check - this helps render Create blocks that are both models AND animated
                 if (renderState.getFluidState().isEmpty()) {
                     //modelBlockRenderer.tesselateBlock(level, ibakedmodel, renderState, pos.pos.offset(renderPos).above(255), matrix, direVertexConsumer, false, random, renderState.getSeed(pos.pos.offset(renderPos)), OverlayTexture.NO_OVERLAY, ModelData.EMPTY, renderType);
                     try {
-                        modelBlockRenderer.tesselateBlock(data.fakeRenderingWorld, ibakedmodel, renderState, pos.pos.offset(renderPos).above(255), matrix, direVertexConsumer, false, random, renderState.getSeed(pos.pos.offset(renderPos)), OverlayTexture.NO_OVERLAY);
+                        modelBlockRenderer.tesselateBlock(world, tesselatedModel, renderState, pos.pos.offset(renderPos).above(255), matrix, direVertexConsumer, false, random, renderState.getSeed(pos.pos.offset(renderPos)), OverlayTexture.NO_OVERLAY);
                     } catch (Exception e) {
                         e.printStackTrace();
                         //System.out.println(e);
                     }
                 } else {
-                    RenderFluidBlock.renderFluidBlock(renderState, level, pos.pos.offset(renderPos).above(255), matrix, direVertexConsumer, true);
+                    RenderFluidBlock.renderFluidBlock(renderState, world, pos.pos.offset(renderPos).above(255), matrix, direVertexConsumer, true);
                 }
             }
             matrix.popPose();
         }
-        //Sort all the builder's vertices and then upload them to the vertex buffers
-        Vec3 projectedView = Minecraft.getInstance().gameRenderer.getMainCamera().getPosition();
-        Vec3 subtracted = projectedView.subtract(renderPos.getX(), renderPos.getY(), renderPos.getZ());
-        Vector3f sortPos = new Vector3f((float) subtracted.x, (float) subtracted.y, (float) subtracted.z);
-        for (Map.Entry<RenderType, DireBufferBuilder> entry : builders.entrySet()) {
-            RenderType renderType = entry.getKey();
-            DireBufferBuilder direBufferBuilder = getBuffer(renderType);
-            direBufferBuilder.setQuadSorting(VertexSorting.byDistance(sortPos));
-            data.sortStates.put(renderType, direBufferBuilder.getSortState());
-            VertexBuffer vertexBuffer = vertexBuffers.get(entry.getKey());
-            vertexBuffer.bind();
-            vertexBuffer.upload(direBufferBuilder.end());
-            VertexBuffer.unbind();
+    }
+
+    /**
+     * Works out which faces of a block are hidden by its neighbours inside the fake world.
+     * @return A bitmask of Direction#get3DDataValue for faces that should not be drawn
+     */
+    public static int getCulledFaces(FakeRenderingWorld world, BlockState state, BlockPos pos) {
+        int culledFaces = 0;
+        BlockPos.MutableBlockPos neighbourPos = new BlockPos.MutableBlockPos();
+        for (Direction direction : Direction.values()) {
+            neighbourPos.setWithOffset(pos, direction);
+            if (!cullAgainstWorld && world.getBlockStateWithoutReal(neighbourPos).isAir())
+                continue;
+            if (!Block.shouldRenderFace(state, world, pos, direction, neighbourPos))
+                culledFaces |= 1 << direction.get3DDataValue();
         }
+        return culledFaces;
     }
 
     public static void drawCopyBox(PoseStack matrix, BlockPos start, BlockPos end) {
@@ -183,11 +232,10 @@ public class StructureRenderer {
         matrix.popPose();
     }
 
-    public static void drawBoundBox(StructureRenderData data, PoseStack matrix, BlockPos blockPos) {
+    public static void drawBoundBox(StructureRenderData data, PoseStack matrix, BlockPos blockPos, Color color) {
         Vec3 projectedView = Minecraft.getInstance().gameRenderer.getMainCamera().getPosition();
         matrix.pushPose();
         matrix.translate(-projectedView.x(), -projectedView.y(), -projectedView.z());
-        Color color = Color.BLUE;
         var boundingBox = data.boundingBox;
         if(boundingBox != null){
             BlockPos min = new BlockPos(boundingBox.minX(), boundingBox.minY(), boundingBox.minZ());
@@ -200,26 +248,12 @@ public class StructureRenderer {
     }
 
     public static boolean isModelRender(BlockState state) {
-        BlockRenderDispatcher dispatcher = Minecraft.getInstance().getBlockRenderer();
-        BakedModel ibakedmodel = dispatcher.getBlockModel(state);
-        for (Direction direction : Direction.values()) {
-            if (!ibakedmodel.getQuads(state, direction, RandomSource.create()).isEmpty()) {
-                return true;
-            }
-            if (!ibakedmodel.getQuads(state, null, RandomSource.create()).isEmpty()) {
-                return true;
-            }
-        }
-        return false;
+        return BlockRenderCache.get(state).modelRender();
     }
 
     //Draw what we've cached
     public static void drawRender(StructureRenderData data, PoseStack poseStack, Matrix4f projectionMatrix, Player player) {
-        if (vertexBuffers == null) {
-            return;
-        }
         BlockPos anchorPos = data.anchorPos;
-        MultiBufferSource.BufferSource buffersource = Minecraft.getInstance().renderBuffers().bufferSource();
         Vec3 projectedView = Minecraft.getInstance().gameRenderer.getMainCamera().getPosition();
         BlockHitResult lookingAt = RaycastHelper.getLookingAt(player, true);
         BlockPos renderPos = anchorPos == null ? lookingAt.getBlockPos() : anchorPos;
@@ -228,65 +262,95 @@ public class StructureRenderer {
         if (lookingAtState.isAir() && anchorPos == null)
             return;
         renderPos = renderPos.above();
-        //Sort every <X> Frames to prevent screendoor effect
-        if (sortCounter > 20) {
-            sortAll(data, renderPos);
-            sortCounter = 0;
-        } else {
-            sortCounter++;
+        //Resort the translucent layers once the camera has moved enough to change their order, prevents the screendoor effect
+        TranslucentSorter.update(data, renderPos);
+
+        //Cull sections against the camera frustum, and draw far to near so translucent sections blend correctly
+        StructureTransform transform = data.transform;
+        Frustum frustum = new Frustum(poseStack.last().pose(), projectionMatrix);
+        frustum.prepare(projectedView.x(), projectedView.y(), projectedView.z());
+        //Sections are in structure coordinates, so bring the camera into them rather than moving every section out
+        Vec3 cameraLocal = transform.invert(projectedView.subtract(renderPos.getX(), renderPos.getY(), renderPos.getZ()));
+        double lodScale = data.statePosCache != null && data.statePosCache.size() > lodBlockCount ? 2 : 1;
+        List<StructureSection> visibleSections = new ArrayList<>();
+        List<StructureSection> lodSections = new ArrayList<>();
+        for (StructureSection section : data.sections.values()) {
+            if (!section.hasGeometry() || !frustum.isVisible(transform.apply(section.bounds).move(renderPos.getX(), renderPos.getY(), renderPos.getZ())))
+                continue;
+            if (lodEnabled) {
+                //Projected height of the section's bounding sphere, as a fraction of the screen height
+                double distance = Math.max(section.bounds.getCenter().distanceTo(cameraLocal), SECTION_RADIUS);
+                double screenSize = SECTION_RADIUS * projectionMatrix.m11() / distance;
+                if (screenSize < lodOutlineBelow * lodScale)
+                    continue;
+                if (screenSize < lodColoredBelow * lodScale) {
+                    if (section.isLodDirty() && section.lodTask == null && data.fakeRenderingWorld != null)
+                        StructureMeshCompiler.compileLod(data, section, 0.5f);
+                    //Keep the full mesh until the coloured one is first ready
+                    if (section.isLodReady()) {
+                        lodSections.add(section);
+                        continue;
+                    }
+                }
+            }
+            visibleSections.add(section);
         }
+        visibleSections.sort(Comparator.comparingDouble((StructureSection section) -> section.bounds.getCenter().distanceToSqr(cameraLocal)).reversed());
 
         PoseStack matrix = poseStack;
         matrix.pushPose();
         matrix.translate(-projectedView.x(), -projectedView.y(), -projectedView.z());
         matrix.translate(renderPos.getX(), renderPos.getY(), renderPos.getZ());
+        matrix.mulPoseMatrix(transform.matrix());
+        Matrix4f projection = new Matrix4f(projectionMatrix);
+        if (transform.flipsWinding())
+            GL11.glFrontFace(GL11.GL_CW);
         //Draw the renders in the specified order
-        ArrayList<RenderType> drawSet = new ArrayList<>();
-        drawSet.add(RenderType.solid());
-        drawSet.add(RenderType.cutout());
-        drawSet.add(RenderType.cutoutMipped());
-        drawSet.add(RenderType.translucent());
-        drawSet.add(RenderType.tripwire());
         try {
-            for (RenderType renderType : drawSet) {
+            //Coloured sections are all further away than the full detail ones, so they go first
+            if (!lodSections.isEmpty()) {
+                DireRenderTypes.GhostLod.setupRenderState();
+                for (StructureSection section : lodSections) {
+                    VertexBuffer vertexBuffer = section.getLodBuffer();
+                    if (vertexBuffer == null || vertexBuffer.getFormat() == null)
+                        continue;
+                    vertexBuffer.bind();
+                    vertexBuffer.drawWithShader(matrix.last().pose(), projection, RenderSystem.getShader());
+                }
+                VertexBuffer.unbind();
+                DireRenderTypes.GhostLod.clearRenderState();
+            }
+            for (RenderType renderType : DRAW_ORDER) {
+                if (renderType.equals(DireRenderTypes.GhostGreedy) && !StructureGreedyMesher.isAvailable())
+                    continue;
                 RenderType drawRenderType;
                 if (renderType.equals(RenderType.cutout()))
                     drawRenderType = DireRenderTypes.RenderBlock;
+                else if (renderType.equals(DireRenderTypes.GhostGreedy))
+                    drawRenderType = DireRenderTypes.GhostGreedy;
                 else
                     drawRenderType = RenderType.translucent();
-                VertexBuffer vertexBuffer = vertexBuffers.get(renderType);
-                if (vertexBuffer.getFormat() == null)
-                    continue; //IDE says this is never null, but if we remove this check we crash because its null so....
                 drawRenderType.setupRenderState();
-                vertexBuffer.bind();
-                vertexBuffer.drawWithShader(matrix.last().pose(), new Matrix4f(projectionMatrix), RenderSystem.getShader());
+                for (StructureSection section : visibleSections) {
+                    VertexBuffer vertexBuffer = section.getVertexBuffer(renderType);
+                    if (vertexBuffer == null || vertexBuffer.getFormat() == null)
+                        continue; //IDE says this is never null, but if we remove this check we crash because its null so....
+                    vertexBuffer.bind();
+                    vertexBuffer.drawWithShader(matrix.last().pose(), projection, RenderSystem.getShader());
+                }
                 VertexBuffer.unbind();
+                data.instancer.draw(renderType, matrix.last().pose(), projection);
                 drawRenderType.clearRenderState();
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
         matrix.popPose();
+        if (transform.flipsWinding())
+            GL11.glFrontFace(GL11.GL_CCW);
 
-        BlockRenderDispatcher dispatcher = Minecraft.getInstance().getBlockRenderer();
-        DireRenderMethods.MultiplyAlphaRenderTypeBuffer multiplyAlphaRenderTypeBuffer = new DireRenderMethods.MultiplyAlphaRenderTypeBuffer(buffersource, 0.5f);
         //If any of the blocks in the render didn't have a model (like chests) we draw them here. This renders AND draws them, so more expensive than caching, but I don't think we have a choice
-        data.fakeRenderingWorld = new FakeRenderingWorld(player.level(), data.statePosCache, renderPos);
-        for (StatePos pos : data.statePosCache.stream().filter(pos -> !isModelRender(pos.state)).toList()) {
-            if (pos.state.isAir()) continue;
-            matrix.pushPose();
-            matrix.translate(-projectedView.x(), -projectedView.y(), -projectedView.z());
-            matrix.translate(renderPos.getX(), renderPos.getY(), renderPos.getZ());
-            matrix.translate(pos.pos.getX(), pos.pos.getY(), pos.pos.getZ());
-            //MyRenderMethods.renderBETransparent(mockBuilderWorld.getBlockState(pos.pos), matrix, buffersource, 15728640, 655360, 0.5f);
-            BlockEntityRenderDispatcher blockEntityRenderer = Minecraft.getInstance().getBlockEntityRenderDispatcher();
-            BlockEntity blockEntity = data.fakeRenderingWorld.getBlockEntity(pos.pos);
-            if (blockEntity != null)
-                blockEntityRenderer.render(blockEntity, 0, matrix, multiplyAlphaRenderTypeBuffer);
-            else
-                DireRenderMethods.renderBETransparent(data.fakeRenderingWorld.getBlockState(pos.pos), matrix, buffersource, 15728640, 655360, 0.5f);
-            matrix.popPose();
-        }
+        BlockEntityGhostRenderer.render(data, matrix, frustum, renderPos, projectedView);
 
         //Fluid Rendering
         /*for (StatePos pos : statePosCache.stream().filter(pos -> (!pos.state.getFluidState().isEmpty())).toList()) {
@@ -327,29 +391,4 @@ public class StructureRenderer {
 //            }
 //        }
     }
-
-    //Sort all the RenderTypes
-    public static void sortAll(StructureRenderData data, BlockPos lookingAt) {
-        for (Map.Entry<RenderType, BufferBuilder.SortState> entry : data.sortStates.entrySet()) {
-            RenderType renderType = entry.getKey();
-            BufferBuilder.RenderedBuffer renderedBuffer = sort(data, lookingAt, renderType);
-            VertexBuffer vertexBuffer = vertexBuffers.get(renderType);
-            vertexBuffer.bind();
-            vertexBuffer.upload(renderedBuffer);
-            VertexBuffer.unbind();
-        }
-    }
-
-    //Sort the render type we pass in - using DireBufferBuilder because we want to sort in the opposite direction from normal
-    public static BufferBuilder.RenderedBuffer sort(StructureRenderData data, BlockPos lookingAt, RenderType renderType) {
-        Vec3 projectedView = Minecraft.getInstance().gameRenderer.getMainCamera().getPosition();
-        Vec3 subtracted = projectedView.subtract(lookingAt.getX(), lookingAt.getY(), lookingAt.getZ());
-        Vector3f sortPos = new Vector3f((float) subtracted.x, (float) subtracted.y, (float) subtracted.z);
-        DireBufferBuilder bufferBuilder = getBuffer(renderType);
-        BufferBuilder.SortState sortState = data.sortStates.get(renderType);
-        bufferBuilder.restoreSortState(sortState);
-        bufferBuilder.setQuadSorting(VertexSorting.byDistance(sortPos));
-        data.sortStates.put(renderType, bufferBuilder.getSortState());
-        return bufferBuilder.end();
-    }
 }
@@ -0,0 +1,149 @@
+package com.hollingsworth.schematic.client.renderer;
+
+import com.mojang.blaze3d.vertex.BufferBuilder;
+import com.mojang.blaze3d.vertex.VertexBuffer;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.phys.AABB;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A 16x16x16 slice of a visualized structure with its own GPU buffers, so it can be culled and rebuilt on its own.
+ * Positions and bounds are relative to the structure origin.
+ */
+public class StructureSection {
+    public final long key;
+    public final AABB bounds;
+    //Replaced, never mutated, so a compile running on another thread keeps a stable view
+    public ArrayList<StatePos> blocks = new ArrayList<>();
+    public Map<RenderType, BufferBuilder.SortState> sortStates = new HashMap<>();
+    public StructureMeshCompiler.CompileTask compileTask;
+    //Only layers that actually have geometry get a buffer
+    private final Map<RenderType, VertexBuffer> vertexBuffers = new HashMap<>();
+    private boolean dirty = true;
+    //Coloured level of detail, only built once the section is first seen from far enough away
+    public StructureMeshCompiler.CompileTask lodTask;
+    private VertexBuffer lodBuffer;
+    private boolean lodDirty = true;
+
+    public StructureSection(long key) {
+        this.key = key;
+        int x = SectionPos.sectionToBlockCoord(SectionPos.x(key));
+        int y = SectionPos.sectionToBlockCoord(SectionPos.y(key));
+        int z = SectionPos.sectionToBlockCoord(SectionPos.z(key));
+        this.bounds = new AABB(x, y, z, x + 16, y + 16, z + 16);
+    }
+
+    public static long keyOf(BlockPos pos) {
+        return SectionPos.asLong(SectionPos.blockToSectionCoord(pos.getX()), SectionPos.blockToSectionCoord(pos.getY()), SectionPos.blockToSectionCoord(pos.getZ()));
+    }
+
+    @Nullable
+    public VertexBuffer getVertexBuffer(RenderType renderType) {
+        return vertexBuffers.get(renderType);
+    }
+
+    /**
+     * Uploads a freshly built layer, dropping the layer's buffer entirely if it came back empty.
+     */
+    public void upload(RenderType renderType, BufferBuilder.RenderedBuffer renderedBuffer) {
+        VertexBuffer vertexBuffer = vertexBuffers.get(renderType);
+        if (renderedBuffer.drawState().vertexCount() == 0) {
+            renderedBuffer.release();
+            if (vertexBuffer != null) {
+                vertexBuffer.close();
+                vertexBuffers.remove(renderType);
+            }
+            return;
+        }
+        if (vertexBuffer == null) {
+            vertexBuffer = new VertexBuffer(VertexBuffer.Usage.STATIC);
+            vertexBuffers.put(renderType, vertexBuffer);
+        }
+        vertexBuffer.bind();
+        vertexBuffer.upload(renderedBuffer);
+        VertexBuffer.unbind();
+    }
+
+    /**
+     * Uploads a freshly built level of detail mesh, or drops it if nothing in the section is visible.
+     */
+    public void uploadLod(@Nullable BufferBuilder.RenderedBuffer renderedBuffer) {
+        if (renderedBuffer == null) {
+            if (lodBuffer != null) {
+                lodBuffer.close();
+                lodBuffer = null;
+            }
+            return;
+        }
+        if (lodBuffer == null) {
+            lodBuffer = new VertexBuffer(VertexBuffer.Usage.STATIC);
+        }
+        lodBuffer.bind();
+        lodBuffer.upload(renderedBuffer);
+        VertexBuffer.unbind();
+    }
+
+    @Nullable
+    public VertexBuffer getLodBuffer() {
+        return lodBuffer;
+    }
+
+    /**
+     * The level of detail can be drawn once it has been built at least once, older meshes keep drawing while it is rebuilt.
+     */
+    public boolean isLodReady() {
+        return lodBuffer != null || (!lodDirty && lodTask == null);
+    }
+
+    public boolean isLodDirty() {
+        return lodDirty;
+    }
+
+    public void markLodBuilt() {
+        lodDirty = false;
+    }
+
+    public boolean hasGeometry() {
+        return !vertexBuffers.isEmpty();
+    }
+
+    public void markDirty() {
+        dirty = true;
+        lodDirty = true;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public void markBuilt() {
+        dirty = false;
+    }
+
+    public void close() {
+        if (compileTask != null) {
+            compileTask.cancel();
+            compileTask = null;
+        }
+        if (lodTask != null) {
+            lodTask.cancel();
+            lodTask = null;
+        }
+        if (lodBuffer != null) {
+            lodBuffer.close();
+            lodBuffer = null;
+        }
+        lodDirty = true;
+        for (VertexBuffer vertexBuffer : vertexBuffers.values()) {
+            vertexBuffer.close();
+        }
+        vertexBuffers.clear();
+        sortStates.clear();
+    }
+}
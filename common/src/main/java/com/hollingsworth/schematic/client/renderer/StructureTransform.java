@@ -0,0 +1,91 @@
+package com.hollingsworth.schematic.client.renderer;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.block.Mirror;
+import net.minecraft.world.level.block.Rotation;
+import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplate;
+import net.minecraft.world.phys.AABB;
+import net.minecraft.world.phys.Vec3;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+/**
+ * The rotation and mirror a structure is placed with, applied around the structure origin the same way
+ * StructureTemplate places blocks (mirror first, then rotate). Meshes stay in the structure's own coordinates and
+ * are drawn through {@link #matrix()}, so turning a structure never touches its blocks.
+ */
+public final class StructureTransform {
+    public static final StructureTransform IDENTITY = new StructureTransform(Rotation.NONE, Mirror.NONE);
+
+    public final Rotation rotation;
+    public final Mirror mirror;
+    //Maps the unit cube of a block at p onto the cube of its placed position, not just its corner
+    private final Matrix4f matrix;
+    private final Matrix4f inverse;
+
+    public StructureTransform(Rotation rotation, Mirror mirror) {
+        this.rotation = rotation;
+        this.mirror = mirror;
+        Matrix4f mirrorMatrix = switch (mirror) {
+            case FRONT_BACK -> new Matrix4f().translate(1, 0, 0).scale(-1, 1, 1);
+            case LEFT_RIGHT -> new Matrix4f().translate(0, 0, 1).scale(1, 1, -1);
+            default -> new Matrix4f();
+        };
+        Matrix4f rotationMatrix = switch (rotation) {
+            case CLOCKWISE_90 -> new Matrix4f().translate(1, 0, 0).rotateY((float) Math.toRadians(-90));
+            case CLOCKWISE_180 -> new Matrix4f().translate(1, 0, 1).rotateY((float) Math.toRadians(180));
+            case COUNTERCLOCKWISE_90 -> new Matrix4f().translate(0, 0, 1).rotateY((float) Math.toRadians(90));
+            default -> new Matrix4f();
+        };
+        this.matrix = rotationMatrix.mul(mirrorMatrix);
+        this.inverse = new Matrix4f(matrix).invert();
+    }
+
+    public boolean isIdentity() {
+        return rotation == Rotation.NONE && mirror == Mirror.NONE;
+    }
+
+    /**
+     * Mirroring turns faces inside out, so the front face winding has to be flipped while drawing.
+     */
+    public boolean flipsWinding() {
+        return mirror != Mirror.NONE;
+    }
+
+    public Matrix4f matrix() {
+        return new Matrix4f(matrix);
+    }
+
+    /**
+     * @return Where a block at a structure position ends up once placed, relative to the structure origin.
+     */
+    public BlockPos apply(BlockPos pos) {
+        return isIdentity() ? pos : StructureTemplate.transform(pos, mirror, rotation, BlockPos.ZERO);
+    }
+
+    /**
+     * @return The structure position of the block placed at the given origin relative position.
+     */
+    public BlockPos invert(BlockPos placedPos) {
+        if (isIdentity()) {
+            return placedPos;
+        }
+        BlockPos unrotated = placedPos.rotate(switch (rotation) {
+            case CLOCKWISE_90 -> Rotation.COUNTERCLOCKWISE_90;
+            case COUNTERCLOCKWISE_90 -> Rotation.CLOCKWISE_90;
+            default -> rotation;
+        });
+        return StructureTemplate.transform(unrotated, mirror, Rotation.NONE, BlockPos.ZERO);
+    }
+
+    public Vec3 invert(Vec3 placedPos) {
+        Vector3f local = inverse.transformPosition(new Vector3f((float) placedPos.x, (float) placedPos.y, (float) placedPos.z));
+        return new Vec3(local.x, local.y, local.z);
+    }
+
+    public AABB apply(AABB bounds) {
+        Vector3f min = matrix.transformPosition(new Vector3f((float) bounds.minX, (float) bounds.minY, (float) bounds.minZ));
+        Vector3f max = matrix.transformPosition(new Vector3f((float) bounds.maxX, (float) bounds.maxY, (float) bounds.maxZ));
+        return new AABB(min.x, min.y, min.z, max.x, max.y, max.z);
+    }
+}
@@ -0,0 +1,158 @@
+package com.hollingsworth.schematic.client.renderer;
+
+import com.hollingsworth.schematic.Constants;
+import com.mojang.blaze3d.vertex.BufferBuilder;
+import com.mojang.blaze3d.vertex.VertexSorting;
+import net.minecraft.Util;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.phys.Vec3;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Re-sorts the translucent layers of a structure when the camera has moved enough relative to it to change the
+ * back to front order. Sorting runs on a worker against the section's stored sort state, and the sections keep
+ * drawing their current indices until the new ones are swapped in on the render thread.
+ */
+public class TranslucentSorter {
+    //Only these layers blend, everything else draws the same in any order
+    private static final List<RenderType> SORTED_LAYERS = List.of(RenderType.translucent(), RenderType.tripwire());
+    //Resort once the camera moves this many blocks towards or away from the structure's centre...
+    private static final double RESORT_DISTANCE = 1.0;
+    //...or swings this far around it
+    private static final double RESORT_ANGLE_COS = Math.cos(Math.toRadians(3));
+    private static final Queue<DireBufferBuilder> BUILDER_POOL = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Starts a resort of the structure if the camera crossed a threshold since the last one and none is running.
+     * @param renderPos The origin the structure's meshes are drawn at
+     */
+    public static void update(StructureRenderData data, BlockPos renderPos) {
+        if (data.sortTask != null || data.boundingBox == null) {
+            return;
+        }
+        Vec3 projectedView = Minecraft.getInstance().gameRenderer.getMainCamera().getPosition();
+        //Meshes are in structure coordinates, so look at the camera from there
+        Vec3 camera = data.transform.invert(projectedView.subtract(renderPos.getX(), renderPos.getY(), renderPos.getZ()));
+        Vec3 centre = data.transform.invert(Vec3.atCenterOf(data.boundingBox.getCenter()));
+        Vec3 offset = camera.subtract(centre);
+        if (data.lastSortOffset != null && !shouldResort(data.lastSortOffset, offset)) {
+            return;
+        }
+
+        List<SortJob> jobs = new ArrayList<>();
+        for (StructureSection section : data.sections.values()) {
+            if (section.compileTask != null)
+                continue; //The pending upload is sorted for a fresh camera anyway
+            for (RenderType renderType : SORTED_LAYERS) {
+                BufferBuilder.SortState sortState = section.sortStates.get(renderType);
+                if (sortState != null && section.getVertexBuffer(renderType) != null) {
+                    jobs.add(new SortJob(section, renderType, sortState));
+                }
+            }
+        }
+        data.lastSortOffset = offset;
+        if (jobs.isEmpty()) {
+            return;
+        }
+        Vector3f sortPos = new Vector3f((float) camera.x, (float) camera.y, (float) camera.z);
+        SortTask task = new SortTask();
+        data.sortTask = task;
+        CompletableFuture.supplyAsync(() -> sort(task, jobs, sortPos), Util.backgroundExecutor())
+                .whenCompleteAsync((result, err) -> upload(data, task, result, err), Minecraft.getInstance());
+    }
+
+    private static boolean shouldResort(Vec3 last, Vec3 current) {
+        double lastLength = last.length();
+        double currentLength = current.length();
+        if (Math.abs(currentLength - lastLength) > RESORT_DISTANCE) {
+            return true;
+        }
+        if (lastLength < 1.0E-3 || currentLength < 1.0E-3) {
+            return last.distanceTo(current) > RESORT_DISTANCE;
+        }
+        return last.dot(current) / (lastLength * currentLength) < RESORT_ANGLE_COS;
+    }
+
+    private static SortedLayers sort(SortTask task, List<SortJob> jobs, Vector3f sortPos) {
+        DireBufferBuilder builder = BUILDER_POOL.poll();
+        if (builder == null) {
+            builder = new DireBufferBuilder(RenderType.translucent().bufferSize());
+        }
+        SortedLayers sorted = new SortedLayers(builder, new ArrayList<>());
+        try {
+            for (SortJob job : jobs) {
+                if (task.cancelled) {
+                    break;
+                }
+                //Only the index buffer is rebuilt from the stored sort state, the vertices on the GPU are untouched
+                builder.begin(job.renderType.mode(), job.renderType.format());
+                builder.restoreSortState(job.sortState);
+                builder.setQuadSorting(VertexSorting.byDistance(sortPos));
+                BufferBuilder.SortState sortState = builder.getSortState();
+                sorted.results.add(new SortResult(job, sortState, builder.end()));
+            }
+        } catch (Exception e) {
+            if (builder.building()) {
+                builder.end().release();
+            }
+            sorted.release();
+            throw e;
+        }
+        return sorted;
+    }
+
+    private static void upload(StructureRenderData data, SortTask task, SortedLayers sorted, Throwable err) {
+        if (err != null) {
+            Constants.LOG.error("Failed to sort structure " + data.name, err);
+        }
+        if (data.sortTask == task) {
+            data.sortTask = null;
+        }
+        if (sorted == null) {
+            return;
+        }
+        for (SortResult result : sorted.results) {
+            StructureSection section = result.job.section;
+            //A rebuild since the sort started means these indices belong to vertices that are gone
+            if (task.cancelled || section.compileTask != null || section.sortStates.get(result.job.renderType) != result.job.sortState
+                    || section.getVertexBuffer(result.job.renderType) == null) {
+                result.buffer.release();
+                continue;
+            }
+            section.upload(result.job.renderType, result.buffer);
+            section.sortStates.put(result.job.renderType, result.sortState);
+        }
+        BUILDER_POOL.add(sorted.builder);
+    }
+
+    public static class SortTask {
+        private volatile boolean cancelled;
+
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private record SortJob(StructureSection section, RenderType renderType, BufferBuilder.SortState sortState) {
+    }
+
+    private record SortResult(SortJob job, BufferBuilder.SortState sortState, BufferBuilder.RenderedBuffer buffer) {
+    }
+
+    private record SortedLayers(DireBufferBuilder builder, List<SortResult> results) {
+        void release() {
+            for (SortResult result : results) {
+                result.buffer.release();
+            }
+            BUILDER_POOL.add(builder);
+        }
+    }
+}
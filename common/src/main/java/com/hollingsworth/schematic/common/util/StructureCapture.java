@@ -0,0 +1,224 @@
+package com.hollingsworth.schematic.common.util;
+
+import com.hollingsworth.schematic.mixin.StructureTemplateAccessor;
+import com.hollingsworth.schematic.mixin.StructureTemplatePaletteAccessor;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.Util;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Captures an area into a StructureTemplate without freezing the game, producing the same template as
+ * StructureTemplate#fillFromWorld with air ignored. The main thread only copies the block containers of loaded chunk
+ * sections and saves block entities, a few chunk columns per tick within {@link #sliceNanos}. The copies are then
+ * turned into the block list on worker threads.
+ */
+public class StructureCapture {
+    //Time the main thread may spend copying chunks each tick
+    public static long sliceNanos = 4_000_000L;
+    //Chunk columns read by each worker job
+    private static final int COLUMNS_PER_JOB = 8;
+
+    private final Level level;
+    private final BlockPos min;
+    private final BlockPos max;
+    private final List<ChunkPos> columns = new ArrayList<>();
+    private final List<ColumnSnapshot> snapshots = new ArrayList<>();
+    private final CompletableFuture<StructureTemplate> result = new CompletableFuture<>();
+    private final AtomicInteger builtColumns = new AtomicInteger();
+    private int nextColumn;
+    private boolean snapshotted;
+    private volatile boolean cancelled;
+
+    private StructureCapture(Level level, BlockPos first, BlockPos second) {
+        this.level = level;
+        BoundingBox bb = BoundingBox.fromCorners(first, second);
+        this.min = new BlockPos(bb.minX(), bb.minY(), bb.minZ());
+        this.max = new BlockPos(bb.maxX(), bb.maxY(), bb.maxZ());
+        for (int x = SectionPos.blockToSectionCoord(min.getX()); x <= SectionPos.blockToSectionCoord(max.getX()); x++) {
+            for (int z = SectionPos.blockToSectionCoord(min.getZ()); z <= SectionPos.blockToSectionCoord(max.getZ()); z++) {
+                columns.add(new ChunkPos(x, z));
+            }
+        }
+    }
+
+    /**
+     * Starts capturing the area between two corners. {@link #tick()} has to be called every client tick until the result completes.
+     */
+    public static StructureCapture start(Level level, BlockPos first, BlockPos second) {
+        return new StructureCapture(level, first, second);
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Completes with the captured template on a worker thread, or is cancelled along with the capture.
+     */
+    public CompletableFuture<StructureTemplate> getResult() {
+        return result;
+    }
+
+    /**
+     * Copies chunk columns until the time slice is used up, then hands everything to the workers once all are copied.
+     */
+    public void tick() {
+        if (cancelled || snapshotted) {
+            return;
+        }
+        long deadline = System.nanoTime() + sliceNanos;
+        while (nextColumn < columns.size()) {
+            snapshot(columns.get(nextColumn++));
+            if (System.nanoTime() > deadline) {
+                return;
+            }
+        }
+        snapshotted = true;
+        StructureTemplate structure = new StructureTemplate();
+        StructureTemplateAccessor accessor = (StructureTemplateAccessor) structure;
+        accessor.setSize(max.subtract(min).offset(1, 1, 1));
+        //Entities have to be read on the main thread, and there are few enough of them to do it in one go
+        accessor.callFillEntityList(level, min, max.offset(1, 1, 1));
+        build(structure);
+    }
+
+    public void cancel() {
+        cancelled = true;
+        result.cancel(false);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return Copying counts for the first quarter, building the block list for the rest.
+     */
+    public float getProgress() {
+        if (columns.isEmpty()) {
+            return 1f;
+        }
+        return 0.25f * nextColumn / columns.size() + 0.75f * builtColumns.get() / columns.size();
+    }
+
+    private void snapshot(ChunkPos pos) {
+        //Unloaded chunks are left out rather than filled with void air
+        LevelChunk chunk = level.getChunkSource().getChunk(pos.x, pos.z, false);
+        if (chunk == null) {
+            return;
+        }
+        List<SectionSnapshot> sections = new ArrayList<>();
+        int minSection = Math.max(SectionPos.blockToSectionCoord(min.getY()), chunk.getMinSection());
+        int maxSection = Math.min(SectionPos.blockToSectionCoord(max.getY()), chunk.getMaxSection() - 1);
+        for (int y = minSection; y <= maxSection; y++) {
+            LevelChunkSection section = chunk.getSection(chunk.getSectionIndexFromSectionY(y));
+            if (!section.hasOnlyAir()) {
+                sections.add(new SectionSnapshot(y, section.getStates().copy()));
+            }
+        }
+        Long2ObjectMap<CompoundTag> blockEntities = new Long2ObjectOpenHashMap<>();
+        for (BlockEntity blockEntity : chunk.getBlockEntities().values()) {
+            BlockPos blockPos = blockEntity.getBlockPos();
+            if (blockPos.getY() >= min.getY() && blockPos.getY() <= max.getY() && blockPos.getX() >= min.getX() && blockPos.getX() <= max.getX()
+                    && blockPos.getZ() >= min.getZ() && blockPos.getZ() <= max.getZ()) {
+                blockEntities.put(blockPos.asLong(), blockEntity.saveWithId());
+            }
+        }
+        if (!sections.isEmpty()) {
+            snapshots.add(new ColumnSnapshot(pos, sections, blockEntities));
+        }
+    }
+
+    private void build(StructureTemplate structure) {
+        //Columns without blocks were never snapshotted, count them as built straight away
+        builtColumns.set(columns.size() - snapshots.size());
+        List<CompletableFuture<BlockLists>> jobs = new ArrayList<>();
+        for (int i = 0; i < snapshots.size(); i += COLUMNS_PER_JOB) {
+            List<ColumnSnapshot> batch = snapshots.subList(i, Math.min(i + COLUMNS_PER_JOB, snapshots.size()));
+            jobs.add(CompletableFuture.supplyAsync(() -> readColumns(batch), Util.backgroundExecutor()));
+        }
+        CompletableFuture.allOf(jobs.toArray(CompletableFuture[]::new)).thenApplyAsync(unused -> {
+            BlockLists merged = new BlockLists();
+            for (CompletableFuture<BlockLists> job : jobs) {
+                merged.addAll(job.join());
+            }
+            //Same order fillFromWorld places blocks in: full blocks, then odd shapes, then block entities, each bottom up
+            List<StructureTemplate.StructureBlockInfo> blocks = StructureTemplateAccessor.callBuildInfoList(merged.normal, merged.withNbt, merged.specialShape);
+            ((StructureTemplateAccessor) structure).getPalettes().add(StructureTemplatePaletteAccessor.create(blocks));
+            return structure;
+        }, Util.backgroundExecutor()).whenComplete((built, err) -> {
+            if (err != null) {
+                result.completeExceptionally(err);
+            } else if (!cancelled) {
+                result.complete(built);
+            }
+        });
+    }
+
+    private BlockLists readColumns(List<ColumnSnapshot> batch) {
+        BlockLists lists = new BlockLists();
+        for (ColumnSnapshot column : batch) {
+            if (cancelled) {
+                break;
+            }
+            int minX = Math.max(min.getX(), column.pos.getMinBlockX());
+            int maxX = Math.min(max.getX(), column.pos.getMaxBlockX());
+            int minZ = Math.max(min.getZ(), column.pos.getMinBlockZ());
+            int maxZ = Math.min(max.getZ(), column.pos.getMaxBlockZ());
+            for (SectionSnapshot section : column.sections) {
+                int sectionY = SectionPos.sectionToBlockCoord(section.y);
+                int minY = Math.max(min.getY(), sectionY);
+                int maxY = Math.min(max.getY(), sectionY + 15);
+                for (int y = minY; y <= maxY; y++) {
+                    for (int x = minX; x <= maxX; x++) {
+                        for (int z = minZ; z <= maxZ; z++) {
+                            BlockState state = section.states.get(x & 15, y & 15, z & 15);
+                            if (state.is(Blocks.AIR)) continue;
+                            CompoundTag nbt = column.blockEntities.get(BlockPos.asLong(x, y, z));
+                            BlockPos relative = new BlockPos(x - min.getX(), y - min.getY(), z - min.getZ());
+                            StructureTemplateAccessor.callAddToLists(new StructureTemplate.StructureBlockInfo(relative, state, nbt), lists.normal, lists.withNbt, lists.specialShape);
+                        }
+                    }
+                }
+            }
+            builtColumns.incrementAndGet();
+        }
+        return lists;
+    }
+
+    private record SectionSnapshot(int y, PalettedContainer<BlockState> states) {
+    }
+
+    private record ColumnSnapshot(ChunkPos pos, List<SectionSnapshot> sections, Long2ObjectMap<CompoundTag> blockEntities) {
+    }
+
+    private static class BlockLists {
+        private final List<StructureTemplate.StructureBlockInfo> normal = new ArrayList<>();
+        private final List<StructureTemplate.StructureBlockInfo> withNbt = new ArrayList<>();
+        private final List<StructureTemplate.StructureBlockInfo> specialShape = new ArrayList<>();
+
+        private void addAll(BlockLists other) {
+            normal.addAll(other.normal);
+            withNbt.addAll(other.withNbt);
+            specialShape.addAll(other.specialShape);
+        }
+    }
+}
@@ -2,11 +2,15 @@ package com.hollingsworth.schematic.export;
 
 
 import com.hollingsworth.schematic.export.level.GuidebookLevel;
+import com.hollingsworth.schematic.mixin.BufferBuilderAccessor;
 import com.mojang.blaze3d.platform.GlConst;
 import com.mojang.blaze3d.platform.Lighting;
 import com.mojang.blaze3d.shaders.FogShape;
 import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
 import com.mojang.blaze3d.vertex.PoseStack;
+import com.mojang.blaze3d.vertex.VertexBuffer;
+import com.mojang.blaze3d.vertex.VertexFormat;
 import com.mojang.blaze3d.vertex.VertexSorting;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.*;
@@ -16,9 +20,14 @@ import net.minecraft.core.SectionPos;
 import net.minecraft.world.level.block.RenderShape;
 import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.world.level.material.FluidState;
+import org.jetbrains.annotations.Nullable;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.util.HashMap;
+import java.util.Map;
 
 public class GuidebookLevelRenderer {
 
@@ -26,6 +35,15 @@ public class GuidebookLevelRenderer {
 
     private final GuidebookLightmap lightmap = new GuidebookLightmap();
 
+    // Opaque and cutout blocks of the last rendered level, baked once and only rebuilt when its blocks change.
+    // Translucent blocks still go through the buffers every render so they can be sorted for the view
+    private final Map<RenderType, VertexBuffer> bakedLayers = new HashMap<>();
+    @Nullable
+    private ChunkBufferBuilderPack bakePack;
+    @Nullable
+    private GuidebookLevel bakedLevel;
+    private int bakedVersion;
+
     public static GuidebookLevelRenderer getInstance() {
         RenderSystem.assertOnRenderThread();
         if (instance == null) {
@@ -91,7 +109,7 @@ public class GuidebookLevelRenderer {
      */
     public void renderContent(GuidebookLevel level, MultiBufferSource.BufferSource buffers) {
         RenderSystem.runAsFancy(() -> {
-            renderBlocks(level, buffers, false);
+            bakeIfChanged(level);
             renderBlockEntities(level, buffers);
 
             // The order comes from LevelRenderer#renderLevel
@@ -100,9 +118,9 @@ public class GuidebookLevelRenderer {
             buffers.endBatch(RenderType.entityCutoutNoCull(TextureAtlas.LOCATION_BLOCKS));
             buffers.endBatch(RenderType.entitySmoothCutout(TextureAtlas.LOCATION_BLOCKS));
 
-            // These would normally be pre-baked, but they are not for us
             for (var layer : RenderType.chunkBufferLayers()) {
                 if (layer != RenderType.translucent()) {
+                    drawBaked(layer);
                     buffers.endBatch(layer);
                 }
             }
@@ -124,6 +142,96 @@ public class GuidebookLevelRenderer {
         });
     }
 
+    private void bakeIfChanged(GuidebookLevel level) {
+        if (level == bakedLevel && level.getBlocksVersion() == bakedVersion) {
+            return;
+        }
+        clearBaked();
+        bakedLevel = level;
+        bakedVersion = level.getBlocksVersion();
+        if (bakePack == null) {
+            bakePack = new ChunkBufferBuilderPack();
+        }
+        var pack = bakePack;
+        renderBlocks(level, renderType -> {
+            var builder = pack.builder(renderType);
+            if (!builder.building()) {
+                builder.begin(VertexFormat.Mode.QUADS, DefaultVertexFormat.BLOCK);
+            }
+            return builder;
+        }, false);
+
+        for (var layer : RenderType.chunkBufferLayers()) {
+            var builder = pack.builder(layer);
+            if (!builder.building()) {
+                continue;
+            }
+            var renderedBuffer = builder.end();
+            if (renderedBuffer.drawState().vertexCount() == 0) {
+                renderedBuffer.release();
+                continue;
+            }
+            var vertexBuffer = new VertexBuffer(VertexBuffer.Usage.STATIC);
+            vertexBuffer.bind();
+            vertexBuffer.upload(renderedBuffer);
+            VertexBuffer.unbind();
+            bakedLayers.put(layer, vertexBuffer);
+        }
+    }
+
+    private void drawBaked(RenderType layer) {
+        var vertexBuffer = bakedLayers.get(layer);
+        if (vertexBuffer == null) {
+            return;
+        }
+        layer.setupRenderState();
+        vertexBuffer.bind();
+        vertexBuffer.drawWithShader(RenderSystem.getModelViewMatrix(), RenderSystem.getProjectionMatrix(), RenderSystem.getShader());
+        VertexBuffer.unbind();
+        layer.clearRenderState();
+    }
+
+    /**
+     * Frees the baked blocks if they belong to this level, for when the level is no longer shown.
+     */
+    public void release(GuidebookLevel level) {
+        if (level == bakedLevel) {
+            clearBaked();
+            freeBakePack();
+        }
+    }
+
+    private void clearBaked() {
+        bakedLayers.values().forEach(VertexBuffer::close);
+        bakedLayers.clear();
+        bakedLevel = null;
+    }
+
+    //The pack's builders hold several MB of native memory that vanilla 1.20.1 has no way to free, so it is done by hand
+    private void freeBakePack() {
+        if (bakePack == null) {
+            return;
+        }
+        for (var layer : RenderType.chunkBufferLayers()) {
+            var builder = bakePack.builder(layer);
+            if (builder.building()) {
+                builder.discard();
+            }
+            MemoryUtil.memFree(((BufferBuilderAccessor) builder).getBuffer());
+        }
+        bakePack = null;
+    }
+
+    /**
+     * Models and atlases are replaced on resource reload, so the baked blocks point at stale textures.
+     */
+    public static void onModelsReloaded() {
+        if (instance != null) {
+            instance.clearBaked();
+            instance.freeBakePack();
+        }
+    }
+
     private void renderBlocks(GuidebookLevel level, MultiBufferSource buffers, boolean translucent) {
         var randomSource = level.random;
         var blockRenderDispatcher = Minecraft.getInstance().getBlockRenderer();
@@ -1,5 +1,6 @@
 package com.hollingsworth.schematic.export;
 
+import com.hollingsworth.schematic.mixin.NativeImageAccessor;
 import com.mojang.blaze3d.pipeline.TextureTarget;
 import com.mojang.blaze3d.platform.GlStateManager;
 import com.mojang.blaze3d.platform.Lighting;
@@ -24,10 +25,16 @@ import java.nio.FloatBuffer;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 public class OffScreenRenderer implements AutoCloseable {
-    private final NativeImage nativeImage;
+    // Frames of an animation that can be in flight between rendering and reading back
+    public static int readbackRingSize = 3;
+    // Only allocated by the captures that read back the whole framebuffer
+    private NativeImage nativeImage;
+    // Receives the rendered frame upside down, so what is read back is already top row first like NativeImage
+    private TextureTarget flipped;
     public final TextureTarget fb;
     public final int width;
     public final int height;
@@ -35,7 +42,6 @@ public class OffScreenRenderer implements AutoCloseable {
     public OffScreenRenderer(int width, int height) {
         this.width = width;
         this.height = height;
-        nativeImage = new NativeImage(width, height, true);
         fb = new TextureTarget(width, height, true /* with depth */, true /* check error */);
         fb.setClearColor(0, 0, 0, 0);
         fb.clear(true /* check error */);
@@ -74,10 +80,43 @@ public class OffScreenRenderer implements AutoCloseable {
 
     @Override
     public void close() {
-        nativeImage.close();
+        if (nativeImage != null) {
+            nativeImage.close();
+        }
+        if (flipped != null) {
+            flipped.destroyBuffers();
+        }
         fb.destroyBuffers();
     }
 
+    /**
+     * Flips the bottom left region of the framebuffer upside down into a second target on the GPU and leaves that
+     * target bound for reading, which replaces flipping every image on the CPU after reading it back.
+     */
+    private void bindFlippedForRead(int regionWidth, int regionHeight) {
+        if (flipped == null) {
+            flipped = new TextureTarget(width, height, false /* without depth */, true /* check error */);
+        }
+        GlStateManager._glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, fb.frameBufferId);
+        GlStateManager._glBindFramebuffer(GL30.GL_DRAW_FRAMEBUFFER, flipped.frameBufferId);
+        GL30.glBlitFramebuffer(0, 0, regionWidth, regionHeight, 0, regionHeight, regionWidth, 0, GL12.GL_COLOR_BUFFER_BIT, GL12.GL_NEAREST);
+        GlStateManager._glBindFramebuffer(GL30.GL_FRAMEBUFFER, flipped.frameBufferId);
+    }
+
+    private void readFlipped(int regionWidth, int regionHeight, NativeImage target) {
+        bindFlippedForRead(regionWidth, regionHeight);
+        GlStateManager._pixelStore(GL12.GL_PACK_ALIGNMENT, 4);
+        GL12.glReadPixels(0, 0, regionWidth, regionHeight, GL12.GL_RGBA, GL12.GL_UNSIGNED_BYTE, ((NativeImageAccessor) (Object) target).getPixels());
+        GlStateManager._glBindFramebuffer(GL30.GL_FRAMEBUFFER, 0);
+    }
+
+    private NativeImage getImage() {
+        if (nativeImage == null) {
+            nativeImage = new NativeImage(width, height, true);
+        }
+        return nativeImage;
+    }
+
     public byte[] captureAsPng(Runnable r) {
         renderToBuffer(r);
 
@@ -88,6 +127,47 @@ public class OffScreenRenderer implements AutoCloseable {
         }
     }
 
+    /**
+     * Renders into the bottom left corner of the framebuffer at the size of the target image and reads back only that
+     * region, so one framebuffer can serve views of any size up to its own.
+     */
+    public byte[] captureAsPng(Runnable r, NativeImage target) {
+        renderToImage(r, target);
+
+        try {
+            return target.asByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("failed to encode image as PNG", e);
+        }
+    }
+
+    /**
+     * Like {@link #captureAsPng(Runnable, NativeImage)}, but only the render and readback happen on the render thread.
+     * The target can be reused as soon as this returns.
+     * @param compression Deflate level, see {@link PngEncoder#SMALL}
+     */
+    public CompletableFuture<byte[]> captureAsPngAsync(Runnable r, NativeImage target, int compression) {
+        renderToImage(r, target);
+        return PngEncoder.encodeAsync(target, compression);
+    }
+
+    private void renderToImage(Runnable r, NativeImage target) {
+        int targetWidth = target.getWidth();
+        int targetHeight = target.getHeight();
+        fb.bindWrite(false);
+        RenderSystem.viewport(0, 0, targetWidth, targetHeight);
+        GlStateManager._clear(GL12.GL_COLOR_BUFFER_BIT | GL12.GL_DEPTH_BUFFER_BIT, false);
+        r.run();
+        fb.unbindWrite();
+        readFlipped(targetWidth, targetHeight, target);
+
+        var minecraft = Minecraft.getInstance();
+        if (minecraft != null) {
+            var window = minecraft.getWindow();
+            RenderSystem.viewport(0, 0, window.getWidth(), window.getHeight());
+        }
+    }
+
     public void captureAsPng(Runnable r, Path path) throws IOException {
         renderToBuffer(r);
 
@@ -128,10 +208,11 @@ public class OffScreenRenderer implements AutoCloseable {
             sprite.uploadFirstFrame();
         }
 
-        int width = nativeImage.getWidth();
-        int height = nativeImage.getHeight();
+        var nativeImage = getImage();
 
-        try (var webpWriter = new WebPExporter(width, height, format)) {
+        // Each frame's readback is only waited on once the ring is full, by which point later frames are rendering
+        try (var webpWriter = new WebPExporter(width, height, format);
+             var readback = new PixelReadback(readbackRingSize, width, height)) {
             for (var i = 0; i < maxTime; i++) {
                 // Bind all animated textures to their corresponding frames
                 for (var entry : tickers.entrySet()) {
@@ -141,26 +222,34 @@ public class OffScreenRenderer implements AutoCloseable {
                     }
                 }
 
-                renderToBuffer(r);
-
-                webpWriter.writeFrame(i, nativeImage);
+                if (readback.isFull()) {
+                    webpWriter.writeFrame(readback.finish(nativeImage), nativeImage);
+                }
+                render(r);
+                bindFlippedForRead(width, height);
+                readback.start(i);
+                GlStateManager._glBindFramebuffer(GL30.GL_FRAMEBUFFER, 0);
+            }
+            while (readback.hasPending()) {
+                webpWriter.writeFrame(readback.finish(nativeImage), nativeImage);
             }
 
             return webpWriter.finish();
         }
     }
 
-    private void renderToBuffer(Runnable r) {
+    private void render(Runnable r) {
         fb.bindWrite(true);
         GlStateManager._clear(GL12.GL_COLOR_BUFFER_BIT | GL12.GL_DEPTH_BUFFER_BIT, false);
         r.run();
         fb.unbindWrite();
+    }
+
+    private void renderToBuffer(Runnable r) {
+        render(r);
 
         // Load the framebuffer back into CPU memory
-        fb.bindRead();
-        nativeImage.downloadTexture(0, false);
-        nativeImage.flipY();
-        fb.unbindRead();
+        readFlipped(width, height, getImage());
     }
 
     public void setupOrtographicRendering() {
@@ -0,0 +1,124 @@
+package com.hollingsworth.schematic.export;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.util.Mth;
+import net.minecraft.util.SimpleBitStorage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Base64;
+
+/**
+ * Compact form of a template's statelist. Every non air block is a palette id packed at the palette's bit width the
+ * same way chunk sections store their states (SimpleBitStorage). A run of air is a single air id in that stream, with
+ * its length kept separately as a varint. Both streams are base64 strings so they survive the JSON upload as is.
+ */
+public class PackedStatelist {
+    public static final int VERSION = 2;
+
+    /**
+     * Packs a statelist into the tag, replacing the plain int array.
+     * @param airId Palette id of air, or -1 if the palette has none
+     */
+    public static void write(CompoundTag tag, int[] statelist, int paletteSize, int airId) {
+        int bits = Math.max(1, Mth.ceillog2(paletteSize));
+        IntArrayList tokens = new IntArrayList();
+        ByteArrayOutputStream runs = new ByteArrayOutputStream();
+        for (int i = 0; i < statelist.length; ) {
+            int id = statelist[i];
+            tokens.add(id);
+            if (id == airId) {
+                int run = 1;
+                while (i + run < statelist.length && statelist[i + run] == airId) run++;
+                writeVarInt(runs, run);
+                i += run;
+            } else {
+                i++;
+            }
+        }
+        SimpleBitStorage storage = new SimpleBitStorage(bits, tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            storage.set(i, tokens.getInt(i));
+        }
+        long[] raw = storage.getRaw();
+        ByteBuffer packed = ByteBuffer.allocate(raw.length * Long.BYTES);
+        packed.asLongBuffer().put(raw);
+
+        tag.remove("statelist");
+        tag.putInt("statelistversion", VERSION);
+        tag.putInt("statelistbits", bits);
+        tag.putInt("statelistcount", tokens.size());
+        tag.putInt("statelistair", airId);
+        tag.putString("statelistpacked", Base64.getEncoder().encodeToString(packed.array()));
+        tag.putString("statelistruns", Base64.getEncoder().encodeToString(runs.toByteArray()));
+    }
+
+    /**
+     * @return The statelist of the tag as one palette id per block, whichever way it was written.
+     * @throws IllegalArgumentException If the packed form does not decode to exactly volume blocks
+     */
+    public static int[] read(CompoundTag tag, int volume) {
+        if (tag.getInt("statelistversion") < VERSION) {
+            return tag.getIntArray("statelist");
+        }
+        int bits = tag.getInt("statelistbits");
+        int count = tag.getInt("statelistcount");
+        int airId = tag.getInt("statelistair");
+        //Every token is at least one block
+        if (bits < 1 || bits > 32 || count < 0 || count > volume) {
+            throw new IllegalArgumentException("Malformed packed statelist: " + count + " tokens of " + bits + " bits for " + volume + " blocks");
+        }
+        LongBuffer packed = ByteBuffer.wrap(Base64.getDecoder().decode(tag.getString("statelistpacked"))).asLongBuffer();
+        long[] raw = new long[packed.remaining()];
+        packed.get(raw);
+        SimpleBitStorage storage = new SimpleBitStorage(bits, count, raw);
+        ByteBuffer runs = ByteBuffer.wrap(Base64.getDecoder().decode(tag.getString("statelistruns")));
+
+        int[] statelist = new int[volume];
+        int index = 0;
+        for (int i = 0; i < count; i++) {
+            int id = storage.get(i);
+            int run = id == airId ? readVarInt(runs) : 1;
+            if (run < 1 || run > volume - index) {
+                throw new IllegalArgumentException("Malformed packed statelist: run of " + run + " at block " + index + " of " + volume);
+            }
+            for (int k = 0; k < run; k++) {
+                statelist[index++] = id;
+            }
+        }
+        if (index != volume) {
+            throw new IllegalArgumentException("Malformed packed statelist: " + index + " blocks instead of " + volume);
+        }
+        return statelist;
+    }
+
+    public static boolean hasStatelist(CompoundTag tag) {
+        return tag.contains("statelist") || tag.contains("statelistpacked");
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    //An int never takes more than 5 bytes, anything longer is corrupt
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int i = 0; i < 5; i++) {
+            if (!in.hasRemaining()) {
+                throw new IllegalArgumentException("Malformed packed statelist: runs end early");
+            }
+            byte b = in.get();
+            value |= (b & 0x7F) << (7 * i);
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed packed statelist: varint longer than 5 bytes");
+    }
+}
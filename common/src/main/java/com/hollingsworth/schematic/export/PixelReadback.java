@@ -0,0 +1,111 @@
+package com.hollingsworth.schematic.export;
+
+import com.hollingsworth.schematic.mixin.NativeImageAccessor;
+import com.mojang.blaze3d.platform.GlStateManager;
+import com.mojang.blaze3d.platform.NativeImage;
+import com.mojang.blaze3d.systems.RenderSystem;
+import org.lwjgl.opengl.GL12;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL21;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * Ring of pixel buffer objects for reading frames back without stalling. {@link #start} only queues the copy from
+ * the bound read framebuffer, and {@link #finish} waits on that frame's fence, so frames further back in the ring can
+ * be copied while the GPU is already rendering the next ones. Frames come out in the order they were started.
+ */
+public class PixelReadback implements AutoCloseable {
+    private final int[] buffers;
+    private final long[] fences;
+    private final int[] frames;
+    private final int width;
+    private final int height;
+    private final long byteSize;
+    private int oldest;
+    private int pending;
+
+    public PixelReadback(int ringSize, int width, int height) {
+        RenderSystem.assertOnRenderThread();
+        this.buffers = new int[ringSize];
+        this.fences = new long[ringSize];
+        this.frames = new int[ringSize];
+        this.width = width;
+        this.height = height;
+        this.byteSize = (long) width * height * 4;
+        for (int i = 0; i < ringSize; i++) {
+            buffers[i] = GlStateManager._glGenBuffers();
+            GlStateManager._glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, buffers[i]);
+            GL15.glBufferData(GL21.GL_PIXEL_PACK_BUFFER, byteSize, GL15.GL_STREAM_READ);
+        }
+        GlStateManager._glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, 0);
+    }
+
+    /**
+     * @return True if every buffer holds a frame, so the oldest has to be finished before another can start.
+     */
+    public boolean isFull() {
+        return pending == buffers.length;
+    }
+
+    public boolean hasPending() {
+        return pending > 0;
+    }
+
+    /**
+     * Queues a copy of the bound read framebuffer into the next free buffer.
+     */
+    public void start(int frame) {
+        if (isFull()) {
+            throw new IllegalStateException("No free readback buffer, finish a frame first");
+        }
+        int slot = (oldest + pending) % buffers.length;
+        GlStateManager._glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, buffers[slot]);
+        GlStateManager._pixelStore(GL12.GL_PACK_ALIGNMENT, 4);
+        // With a pack buffer bound the pointer is an offset into it, and the call returns without waiting for the copy
+        GL12.glReadPixels(0, 0, width, height, GL12.GL_RGBA, GL12.GL_UNSIGNED_BYTE, 0L);
+        GlStateManager._glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, 0);
+        fences[slot] = GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        frames[slot] = frame;
+        pending++;
+    }
+
+    /**
+     * Waits for the oldest queued frame and copies it into the target image.
+     * @return The frame number it was started with
+     */
+    public int finish(NativeImage target) {
+        if (pending == 0) {
+            throw new IllegalStateException("No frame is being read back");
+        }
+        int slot = oldest;
+        while (GL32.glClientWaitSync(fences[slot], GL32.GL_SYNC_FLUSH_COMMANDS_BIT, 1_000_000L) == GL32.GL_TIMEOUT_EXPIRED) {
+            Thread.onSpinWait();
+        }
+        GL32.glDeleteSync(fences[slot]);
+        fences[slot] = 0;
+
+        GlStateManager._glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, buffers[slot]);
+        var mapped = GL30.glMapBufferRange(GL21.GL_PIXEL_PACK_BUFFER, 0, byteSize, GL30.GL_MAP_READ_BIT);
+        if (mapped != null) {
+            MemoryUtil.memCopy(MemoryUtil.memAddress(mapped), ((NativeImageAccessor) (Object) target).getPixels(), byteSize);
+        }
+        GL15.glUnmapBuffer(GL21.GL_PIXEL_PACK_BUFFER);
+        GlStateManager._glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, 0);
+
+        oldest = (oldest + 1) % buffers.length;
+        pending--;
+        return frames[slot];
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0; i < buffers.length; i++) {
+            if (fences[i] != 0) {
+                GL32.glDeleteSync(fences[i]);
+            }
+            GlStateManager._glDeleteBuffers(buffers[i]);
+        }
+    }
+}
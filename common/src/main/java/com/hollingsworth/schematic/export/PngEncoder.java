@@ -0,0 +1,195 @@
+package com.hollingsworth.schematic.export;
+
+import com.hollingsworth.schematic.mixin.NativeImageAccessor;
+import com.mojang.blaze3d.platform.NativeImage;
+import net.minecraft.Util;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes RGBA images as PNG on the background executor instead of the render thread. The pixels are copied out of
+ * the NativeImage first, so the image can be reused for the next render straight away. The compression level is a
+ * plain deflate level, and levels at or below {@link Deflater#BEST_SPEED} also skip row filtering. Big images are
+ * deflated in stripes in parallel, each primed with the end of the previous one, and the stripes are joined into a
+ * single zlib stream.
+ */
+public class PngEncoder {
+    // For images that are uploaded and kept
+    public static final int SMALL = 9;
+    // Filtered bytes per parallel stripe, images smaller than two stripes are deflated in one go
+    public static int stripeSize = 512 * 1024;
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    // Deflate looks back at most this far, so it is all a stripe needs from the previous one
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    /**
+     * Copies the image's pixels and encodes them off thread.
+     */
+    public static CompletableFuture<byte[]> encodeAsync(NativeImage image, int level) {
+        if (image.format() != NativeImage.Format.RGBA) {
+            throw new IllegalArgumentException("Only RGBA images can be encoded, got " + image.format());
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] pixels = new byte[width * height * 4];
+        MemoryUtil.memByteBuffer(((NativeImageAccessor) (Object) image).getPixels(), pixels.length).get(pixels);
+        return CompletableFuture.supplyAsync(() -> encode(pixels, width, height, level), Util.backgroundExecutor());
+    }
+
+    public static byte[] encode(byte[] pixels, int width, int height, int level) {
+        byte[] filtered = filter(pixels, width, height, level);
+        byte[] compressed = deflate(filtered, level);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length + 64);
+        out.writeBytes(SIGNATURE);
+        ByteBuffer header = ByteBuffer.allocate(13);
+        header.putInt(width).putInt(height)
+                .put((byte) 8) // bit depth
+                .put((byte) 6) // colour type: RGBA
+                .put((byte) 0) // compression: deflate
+                .put((byte) 0) // filter method: adaptive
+                .put((byte) 0); // no interlace
+        writeChunk(out, "IHDR", header.array(), header.array().length);
+        writeChunk(out, "IDAT", compressed, compressed.length);
+        writeChunk(out, "IEND", new byte[0], 0);
+        return out.toByteArray();
+    }
+
+    //Fastest encodes skip filtering. Otherwise each row uses the filter with the smallest sum of absolute values, the usual PNG heuristic
+    private static byte[] filter(byte[] pixels, int width, int height, int level) {
+        int stride = width * 4;
+        byte[] filtered = new byte[(stride + 1) * height];
+        byte[] candidate = new byte[stride];
+        byte[] best = new byte[stride];
+        for (int y = 0; y < height; y++) {
+            int row = y * stride;
+            int out = y * (stride + 1);
+            if (level <= Deflater.BEST_SPEED) {
+                filtered[out] = 0;
+                System.arraycopy(pixels, row, filtered, out + 1, stride);
+                continue;
+            }
+            int bestType = 0;
+            long bestScore = Long.MAX_VALUE;
+            for (int type = 0; type <= 4; type++) {
+                long score = 0;
+                for (int i = 0; i < stride; i++) {
+                    int current = pixels[row + i] & 0xFF;
+                    int left = i >= 4 ? pixels[row + i - 4] & 0xFF : 0;
+                    int up = y > 0 ? pixels[row - stride + i] & 0xFF : 0;
+                    int upLeft = y > 0 && i >= 4 ? pixels[row - stride + i - 4] & 0xFF : 0;
+                    int predicted = switch (type) {
+                        case 1 -> left;
+                        case 2 -> up;
+                        case 3 -> (left + up) >> 1;
+                        case 4 -> paeth(left, up, upLeft);
+                        default -> 0;
+                    };
+                    byte value = (byte) (current - predicted);
+                    candidate[i] = value;
+                    score += Math.abs(value);
+                }
+                if (score < bestScore) {
+                    bestScore = score;
+                    bestType = type;
+                    System.arraycopy(candidate, 0, best, 0, stride);
+                }
+            }
+            filtered[out] = (byte) bestType;
+            System.arraycopy(best, 0, filtered, out + 1, stride);
+        }
+        return filtered;
+    }
+
+    private static int paeth(int left, int up, int upLeft) {
+        int estimate = left + up - upLeft;
+        int toLeft = Math.abs(estimate - left);
+        int toUp = Math.abs(estimate - up);
+        int toUpLeft = Math.abs(estimate - upLeft);
+        if (toLeft <= toUp && toLeft <= toUpLeft) {
+            return left;
+        }
+        return toUp <= toUpLeft ? up : upLeft;
+    }
+
+    //Raw deflate stripes that end on a sync flush can be concatenated, only the last one finishes the stream
+    private static byte[] deflate(byte[] data, int level) {
+        int stripes = Math.max(1, data.length / stripeSize);
+        List<CompletableFuture<byte[]>> parts = new ArrayList<>(stripes);
+        for (int i = 0; i < stripes; i++) {
+            int start = i * stripeSize;
+            int end = i == stripes - 1 ? data.length : start + stripeSize;
+            boolean last = i == stripes - 1;
+            if (stripes == 1) {
+                parts.add(CompletableFuture.completedFuture(deflateStripe(data, start, end, level, true)));
+            } else {
+                parts.add(CompletableFuture.supplyAsync(() -> deflateStripe(data, start, end, level, last), Util.backgroundExecutor()));
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+        // zlib header for a 32K window, with the level hint and check bits
+        out.write(0x78);
+        out.write(level <= Deflater.BEST_SPEED ? 0x01 : level >= SMALL ? 0xDA : 0x9C);
+        for (CompletableFuture<byte[]> part : parts) {
+            out.writeBytes(part.join());
+        }
+        Adler32 adler = new Adler32();
+        adler.update(data);
+        long checksum = adler.getValue();
+        out.write((int) (checksum >>> 24) & 0xFF);
+        out.write((int) (checksum >>> 16) & 0xFF);
+        out.write((int) (checksum >>> 8) & 0xFF);
+        out.write((int) checksum & 0xFF);
+        return out.toByteArray();
+    }
+
+    private static byte[] deflateStripe(byte[] data, int start, int end, int level, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (start > 0) {
+                int dictionaryStart = Math.max(0, start - DICTIONARY_SIZE);
+                deflater.setDictionary(data, dictionaryStart, start - dictionaryStart);
+            }
+            deflater.setInput(data, start, end - start);
+            if (last) {
+                deflater.finish();
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream((end - start) / 2 + 64);
+            byte[] buffer = new byte[64 * 1024];
+            int flush = last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH;
+            while (true) {
+                int written = deflater.deflate(buffer, 0, buffer.length, flush);
+                out.write(buffer, 0, written);
+                if (last ? deflater.finished() : written < buffer.length && deflater.needsInput()) {
+                    break;
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeChunk(ByteArrayOutputStream out, String type, byte[] data, int length) {
+        ByteBuffer lengthBytes = ByteBuffer.allocate(4).putInt(length);
+        out.writeBytes(lengthBytes.array());
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        out.writeBytes(typeBytes);
+        out.write(data, 0, length);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        out.writeBytes(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+    }
+}
@@ -1,6 +1,7 @@
 package com.hollingsworth.schematic.export;
 
 import com.hollingsworth.schematic.export.level.GuidebookLevel;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import net.minecraft.core.BlockPos;
 import org.jetbrains.annotations.NotNull;
 import org.joml.*;
@@ -17,6 +18,11 @@ public class Scene {
     private int width;
     private int height;
 
+    // Derived from the filled blocks in updateGeometry and reused for every view until the level changes
+    private int geometryVersion = -1;
+    private float[] hullCorners = new float[0];
+    private final Vector3f worldCenter = new Vector3f();
+
     public Scene(GuidebookLevel level, CameraSettings cameraSettings) {
         this.level = level;
         this.cameraSettings = cameraSettings;
@@ -54,25 +60,15 @@ public class Scene {
             return new Bounds(new Vector3f(), new Vector3f());
         }
 
-        // This is doing more work than needed since touching blocks create unneeded corners
+        updateGeometry();
         var tmpPos = new Vector3f();
         var min = new Vector3f(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
         var max = new Vector3f(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
-        level.getFilledBlocks().forEach(pos -> {
-            for (var xCorner = 0; xCorner <= 1; xCorner++) {
-                for (var yCorner = 0; yCorner <= 1; yCorner++) {
-                    for (var zCorner = 0; zCorner <= 1; zCorner++) {
-                        viewMatrix.transformPosition(
-                                pos.getX() + xCorner,
-                                pos.getY() + yCorner,
-                                pos.getZ() + zCorner,
-                                tmpPos);
-                        min.min(tmpPos);
-                        max.max(tmpPos);
-                    }
-                }
-            }
-        });
+        for (int i = 0; i < hullCorners.length; i += 3) {
+            viewMatrix.transformPosition(hullCorners[i], hullCorners[i + 1], hullCorners[i + 2], tmpPos);
+            min.min(tmpPos);
+            max.max(tmpPos);
+        }
         return new Bounds(min, max);
     }
 
@@ -125,30 +121,61 @@ public class Scene {
     }
 
     public Vector3fc getWorldCenter() {
-        // This is doing more work than needed since touching blocks create unneeded corners
-        var tmpPos = new Vector3f();
+        updateGeometry();
+        return worldCenter;
+    }
+
+    /**
+     * Reduces the filled blocks to the few corners any view's bounds can come from, once per change to the level.
+     * A view is linear, so its extremes lie on block corners, and along a vertical line of corners only the lowest
+     * and highest one can be an extreme. Each corner column is therefore kept as just those two points.
+     */
+    private void updateGeometry() {
+        int version = level.getFilledBlocksVersion();
+        if (version == geometryVersion) {
+            return;
+        }
+        geometryVersion = version;
+        var lows = new Long2IntOpenHashMap();
+        var highs = new Long2IntOpenHashMap();
+        lows.defaultReturnValue(Integer.MAX_VALUE);
+        highs.defaultReturnValue(Integer.MIN_VALUE);
         var min = new Vector3f(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
         var max = new Vector3f(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+        var tmp = new Vector3f();
         level.getFilledBlocks().forEach(pos -> {
-            var tmp = new Vector3f();
             for (var xCorner = 0; xCorner <= 1; xCorner++) {
-                for (var yCorner = 0; yCorner <= 1; yCorner++) {
-                    for (var zCorner = 0; zCorner <= 1; zCorner++) {
-                        tmp.set(pos.getX(), pos.getY(), pos.getZ());
-                        min.min(tmp);
-                        max.max(tmp);
-
-                        tmp.add(1, 1, 1);
-                        min.min(tmp);
-                        max.max(tmp);
-                    }
+                for (var zCorner = 0; zCorner <= 1; zCorner++) {
+                    long column = ((long) (pos.getX() + xCorner) << 32) | ((pos.getZ() + zCorner) & 0xFFFFFFFFL);
+                    lows.put(column, Math.min(lows.get(column), pos.getY()));
+                    highs.put(column, Math.max(highs.get(column), pos.getY() + 1));
                 }
             }
+            tmp.set(pos.getX(), pos.getY(), pos.getZ());
+            min.min(tmp);
+            tmp.add(1, 1, 1);
+            max.max(tmp);
         });
-        var avg = new Vector3f(min);
-        avg.add(max);
-        avg.div(2);
-        return avg;
+
+        hullCorners = new float[lows.size() * 6];
+        int i = 0;
+        for (var entry : lows.long2IntEntrySet()) {
+            long column = entry.getLongKey();
+            float x = (int) (column >> 32);
+            float z = (int) column;
+            hullCorners[i++] = x;
+            hullCorners[i++] = entry.getIntValue();
+            hullCorners[i++] = z;
+            hullCorners[i++] = x;
+            hullCorners[i++] = highs.get(column);
+            hullCorners[i++] = z;
+        }
+
+        if (hullCorners.length == 0) {
+            worldCenter.set(0);
+        } else {
+            worldCenter.set(min).add(max).div(2);
+        }
     }
 
     public GuidebookLevel getLevel() {
@@ -4,13 +4,20 @@ import com.google.common.collect.ImmutableList;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.hollingsworth.schematic.client.renderer.StatePos;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenCustomHashMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.Util;
 import net.minecraft.client.Minecraft;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.nbt.*;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.util.FastBufferedInputStream;
+import net.minecraft.util.Mth;
 import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.level.Level;
@@ -28,20 +35,22 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.Objects;
-import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
 
 // Yoinked from building gadgets for json support
 public class Template {
+    //Write the statelist bit packed and air run length encoded, see PackedStatelist. Off writes the plain int array older readers expect.
+    //Stays off until the blockprints server reads the packed form, uploads are posted as is
+    public static boolean compactStatelist = false;
+
     public String name;
     public String statePosArrayList;
     public Map<String, Integer> requiredItems = new Object2IntOpenHashMap<>();
 
     public Template(String name, BlockPos start, BlockPos end) {
         this.name = name;
-        ArrayList<StatePos> statePosArrayList = Template.listForDire(start, end, Minecraft.getInstance().level);
-        this.statePosArrayList = statePosListToNBTMapArray(statePosArrayList).toString();
-        Map<ItemStackKey, Integer> requiredItemsTemp = StatePos.getItemList(statePosArrayList);
+        Map<ItemStackKey, Integer> requiredItemsTemp = new Object2IntOpenHashMap<>();
+        this.statePosArrayList = encodeArea(Minecraft.getInstance().level, start, end, requiredItemsTemp).toString();
         for (Map.Entry<ItemStackKey, Integer> entry : requiredItemsTemp.entrySet()) {
             if (entry.getKey().getStack().isEmpty()) continue;
             var item = entry.getKey().item;
@@ -50,8 +59,76 @@ public class Template {
         }
     }
 
+    /**
+     * Writes the area straight into the same tag {@link #statePosListToNBTMapArray} builds from {@link #listForDire},
+     * in one walk and without a StatePos per block. Each distinct world state is cleaned and looked up in the palette
+     * once, and blocks are counted per palette entry before being turned into items.
+     * @param requiredItems Filled with the items needed for every block in the area, including empty stacks for air
+     */
+    public static CompoundTag encodeArea(Level level, BlockPos startRaw, BlockPos endRaw, Map<ItemStackKey, Integer> requiredItems) {
+        int minX = Math.min(startRaw.getX(), endRaw.getX()), maxX = Math.max(startRaw.getX(), endRaw.getX());
+        int minY = Math.min(startRaw.getY(), endRaw.getY()), maxY = Math.max(startRaw.getY(), endRaw.getY());
+        int minZ = Math.min(startRaw.getZ(), endRaw.getZ()), maxZ = Math.max(startRaw.getZ(), endRaw.getZ());
+        long volume = (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+        if (volume > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Area too large to encode: " + volume + " blocks");
+        }
+
+        //BlockStates are interned, so identity lookups are enough and much cheaper than hashing their properties
+        Object2IntMap<BlockState> paletteIds = new Object2IntOpenCustomHashMap<>(Util.identityStrategy());
+        paletteIds.defaultReturnValue(-1);
+        Object2IntMap<BlockState> worldStateIds = new Object2IntOpenCustomHashMap<>(Util.identityStrategy());
+        worldStateIds.defaultReturnValue(-1);
+        ArrayList<BlockState> palette = new ArrayList<>();
+        IntArrayList paletteCounts = new IntArrayList();
+        int[] blocklist = new int[(int) volume];
+        int index = 0;
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        //Same order as BlockPos.betweenClosed, which the decoder walks: x fastest, then y, then z
+        for (int z = minZ; z <= maxZ; z++) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int x = minX; x <= maxX; x++) {
+                    BlockState worldState = level.getBlockState(pos.set(x, y, z));
+                    int id = worldStateIds.getInt(worldState);
+                    if (id == -1) {
+                        //We need to have a block in EVERY position, so write air if invalid
+                        BlockState state = validStateForDire(worldState, level, pos) ? cleanBlockState(worldState) : Blocks.AIR.defaultBlockState();
+                        id = paletteIds.getInt(state);
+                        if (id == -1) {
+                            id = palette.size();
+                            paletteIds.put(state, id);
+                            palette.add(state);
+                            paletteCounts.add(0);
+                        }
+                        worldStateIds.put(worldState, id);
+                    }
+                    blocklist[index++] = id;
+                    paletteCounts.set(id, paletteCounts.getInt(id) + 1);
+                }
+            }
+        }
+
+        for (int i = 0; i < palette.size(); i++) {
+            BlockState state = palette.get(i);
+            ItemStack cloneStack = state.getBlock().getCloneItemStack(level, BlockPos.ZERO, state);
+            requiredItems.merge(new ItemStackKey(cloneStack, true), paletteCounts.getInt(i), Integer::sum);
+        }
+
+        CompoundTag tag = new CompoundTag();
+        tag.put("startpos", NbtUtils.writeBlockPos(new BlockPos(minX, minY, minZ).subtract(startRaw)));
+        tag.put("endpos", NbtUtils.writeBlockPos(new BlockPos(maxX, maxY, maxZ).subtract(startRaw)));
+        tag.put("blockstatemap", StatePos.getBlockStateNBT(palette));
+        if (compactStatelist) {
+            PackedStatelist.write(tag, blocklist, palette.size(), paletteIds.getInt(Blocks.AIR.defaultBlockState()));
+        } else {
+            tag.putIntArray("statelist", blocklist);
+        }
+        return tag;
+    }
+
     public String toJson() {
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        //Only ever read by the server, so no need to pay for indentation on every upload
+        Gson gson = new GsonBuilder().create();
         return gson.toJson(this);
     }
 
@@ -78,20 +155,27 @@ public class Template {
         CompoundTag tag = new CompoundTag();
         ArrayList<BlockState> blockStateMap = StatePos.getBlockStateMap(list);
         ListTag blockStateMapList = StatePos.getBlockStateNBT(blockStateMap);
+        Object2IntMap<BlockState> paletteIds = new Object2IntOpenCustomHashMap<>(Util.identityStrategy());
+        paletteIds.defaultReturnValue(-1);
+        for (int i = 0; i < blockStateMap.size(); i++) {
+            paletteIds.put(blockStateMap.get(i), i);
+        }
         int[] blocklist = new int[list.size()];
-        final int[] counter = {0};
+        int counter = 0;
 
         BlockPos start = list.get(0).pos;
         BlockPos end = list.get(list.size() - 1).pos;
         AABB aabb = new AABB(start, end);
 
-        Map<BlockPos, BlockState> blockStateByPos = list.stream()
-                .collect(Collectors.toMap(e -> e.pos, e -> e.state));
+        Long2ObjectMap<BlockState> blockStateByPos = new Long2ObjectOpenHashMap<>(list.size());
+        for (StatePos statePos : list) {
+            blockStateByPos.put(statePos.pos.asLong(), statePos.state);
+        }
 
-        BlockPos.betweenClosedStream(aabb).map(BlockPos::immutable).forEach(pos -> {
-            BlockState blockState = blockStateByPos.get(pos);
-            blocklist[counter[0]++] = blockStateMap.indexOf(blockState);
-        });
+        for (BlockPos pos : BlockPos.betweenClosed(Mth.floor(aabb.minX), Mth.floor(aabb.minY), Mth.floor(aabb.minZ), Mth.floor(aabb.maxX), Mth.floor(aabb.maxY), Mth.floor(aabb.maxZ))) {
+            BlockState blockState = blockStateByPos.get(pos.asLong());
+            blocklist[counter++] = blockState == null ? -1 : paletteIds.getInt(blockState);
+        }
 
         tag.put("startpos", NbtUtils.writeBlockPos(start));
         tag.put("endpos", NbtUtils.writeBlockPos(end));
@@ -120,12 +204,13 @@ public class Template {
 
     public static ArrayList<StatePos> statePosListFromNBTMapArray(CompoundTag tag) {
         ArrayList<StatePos> statePosList = new ArrayList<>();
-        if (!tag.contains("blockstatemap") || !tag.contains("statelist")) return statePosList;
+        if (!tag.contains("blockstatemap") || !PackedStatelist.hasStatelist(tag)) return statePosList;
         ArrayList<BlockState> blockStateMap = StatePos.getBlockStateMapFromNBT(tag.getList("blockstatemap", Tag.TAG_COMPOUND));
         BlockPos start = readBlockPos(tag, "startpos");
         BlockPos end = readBlockPos(tag, "endpos");
         AABB aabb = aabbFromBlockPos(start, end);
-        int[] blocklist = tag.getIntArray("statelist");
+        int volume = (Math.abs(end.getX() - start.getX()) + 1) * (Math.abs(end.getY() - start.getY()) + 1) * (Math.abs(end.getZ() - start.getZ()) + 1);
+        int[] blocklist = PackedStatelist.read(tag, volume);
         final int[] counter = {0};
         BlockPos.betweenClosedStream(aabb).map(BlockPos::immutable).forEach(pos -> {
             int blockStateLookup = blocklist[counter[0]++];
@@ -17,6 +17,11 @@ import java.io.DataInputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.zip.GZIPInputStream;
 
 public class WrappedScene {
@@ -91,6 +96,62 @@ public class WrappedScene {
         }
     }
 
+    /**
+     * Renders several views through one framebuffer sized for the largest of them, reusing one readback image per
+     * size. A view asked for more than once is rendered once and its image shared. The camera is left as it was.
+     * Only rendering happens here, the PNGs are encoded in the background at the given compression level.
+     */
+    public CompletableFuture<List<ImageExport>> exportBatch(List<ExportView> views, int compression) {
+        if (scene == null || views.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        var viewportSize = viewport.getPreferredSize();
+        int maxWidth = 1;
+        int maxHeight = 1;
+        for (ExportView view : views) {
+            maxWidth = Math.max(maxWidth, view.size().width());
+            maxHeight = Math.max(maxHeight, view.size().height());
+        }
+
+        var cameraSettings = scene.getCameraSettings();
+        var current = cameraSettings.save();
+        Map<ExportView, CompletableFuture<byte[]>> rendered = new HashMap<>();
+        Map<LytSize, NativeImage> readback = new HashMap<>();
+        List<CompletableFuture<byte[]>> encodes = new ArrayList<>();
+        try (var osr = new OffScreenRenderer(maxWidth, maxHeight)) {
+            for (ExportView view : views) {
+                CompletableFuture<byte[]> png = rendered.get(view);
+                if (png == null) {
+                    cameraSettings.restore(current);
+                    if (view.preset() != null) {
+                        cameraSettings.setPerspectivePreset(view.preset());
+                        cameraSettings.setRotationCenter(scene.getWorldCenter());
+                        cameraSettings.setZoom(1.0f);
+                        scene.centerScene();
+                    }
+                    var target = readback.computeIfAbsent(view.size(), size -> new NativeImage(size.width(), size.height(), true));
+                    // The encoder copies the pixels, so the same target is safe to render the next view into
+                    png = osr.captureAsPngAsync(() -> {
+                        cameraSettings.setViewportSize(viewportSize);
+                        GuidebookLevelRenderer.getInstance().render(scene.getLevel(), cameraSettings);
+                    }, target, compression);
+                    rendered.put(view, png);
+                }
+                encodes.add(png);
+            }
+        } finally {
+            readback.values().forEach(NativeImage::close);
+            cameraSettings.restore(current);
+        }
+        return CompletableFuture.allOf(encodes.toArray(new CompletableFuture<?>[0])).thenApply(unused -> {
+            List<ImageExport> images = new ArrayList<>(views.size());
+            for (int i = 0; i < views.size(); i++) {
+                images.add(new ImageExport(views.get(i).size(), encodes.get(i).join()));
+            }
+            return images;
+        });
+    }
+
     public @Nullable LytSize getSizeForExport(float scale){
         var prefSize = viewport.getPreferredSize();
         if (prefSize.width() <= 0 || prefSize.height() <= 0) {
@@ -169,6 +230,12 @@ public class WrappedScene {
 
     public record ImageExport(LytSize size, byte[] image){}
 
+    /**
+     * One image of a batch export.
+     * @param preset Camera preset to render from, or null for the camera as it is
+     */
+    public record ExportView(@Nullable PerspectivePreset preset, LytSize size){}
+
     class Viewport {
 
 //
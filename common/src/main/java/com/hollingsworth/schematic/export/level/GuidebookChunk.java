@@ -21,6 +21,7 @@ class GuidebookChunk extends LevelChunk {
         getGuidebookLevel().prepareLighting(pos);
 
         var result = super.setBlockState(pos, state, isMoving);
+        getGuidebookLevel().markBlocksChanged();
         if (state.isAir()) {
             getGuidebookLevel().removeFilledBlock(pos);
         } else {
@@ -56,6 +56,10 @@ public class GuidebookLevel extends Level {
     private final Holder<Biome> biome;
     private final RegistryAccess registryAccess;
     private final LongSet filledBlocks = new LongOpenHashSet();
+    // Bumped whenever a block is filled or emptied, so anything derived from the filled blocks knows to recompute
+    private int filledBlocksVersion;
+    // Bumped on every block change, including ones that only swap one state for another
+    private int blocksVersion;
     /**
      * Sections for which we prepared lighting.
      */
@@ -115,11 +119,27 @@ public class GuidebookLevel extends Level {
     }
 
     void removeFilledBlock(BlockPos pos) {
-        filledBlocks.remove(pos.asLong());
+        if (filledBlocks.remove(pos.asLong())) {
+            filledBlocksVersion++;
+        }
     }
 
     void addFilledBlock(BlockPos pos) {
-        filledBlocks.add(pos.asLong());
+        if (filledBlocks.add(pos.asLong())) {
+            filledBlocksVersion++;
+        }
+    }
+
+    public int getFilledBlocksVersion() {
+        return filledBlocksVersion;
+    }
+
+    void markBlocksChanged() {
+        blocksVersion++;
+    }
+
+    public int getBlocksVersion() {
+        return blocksVersion;
     }
 
     /**
@@ -9,6 +9,8 @@ import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.gen.Accessor;
 import org.spongepowered.asm.mixin.gen.Invoker;
 
+import java.nio.ByteBuffer;
+
 @Mixin(BufferBuilder.class)
 public interface BufferBuilderAccessor {
     @Accessor
@@ -26,4 +28,7 @@ public interface BufferBuilderAccessor {
 
     @Accessor
     VertexFormat.Mode getMode();
+
+    @Accessor
+    ByteBuffer getBuffer();
 }
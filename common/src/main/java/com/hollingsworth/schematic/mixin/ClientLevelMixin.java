@@ -0,0 +1,20 @@
+package com.hollingsworth.schematic.mixin;
+
+import com.hollingsworth.schematic.client.renderer.StructureRenderer;
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.block.state.BlockState;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(ClientLevel.class)
+public class ClientLevelMixin {
+
+    // Real world changes next to a visualized structure change its neighbour shapes and lighting
+    @Inject(method = "sendBlockUpdated", at = @At("HEAD"))
+    private void blockprints$onBlockUpdated(BlockPos pos, BlockState oldState, BlockState newState, int flags, CallbackInfo ci) {
+        StructureRenderer.onBlockChanged(pos);
+    }
+}
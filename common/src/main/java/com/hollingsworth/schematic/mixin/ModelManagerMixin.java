@@ -0,0 +1,26 @@
+package com.hollingsworth.schematic.mixin;
+
+import com.hollingsworth.schematic.client.renderer.BlockRenderCache;
+import com.hollingsworth.schematic.client.renderer.StructureGreedyMesher;
+import com.hollingsworth.schematic.client.renderer.StructureInstancer;
+import com.hollingsworth.schematic.client.renderer.StructureLodMesher;
+import com.hollingsworth.schematic.export.GuidebookLevelRenderer;
+import net.minecraft.client.resources.model.ModelManager;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(ModelManager.class)
+public class ModelManagerMixin {
+
+    // Baked models are replaced on resource reload, so anything we learned about them is stale
+    @Inject(method = "apply", at = @At("TAIL"))
+    private void blockprints$onModelsApplied(CallbackInfo ci) {
+        BlockRenderCache.clear();
+        StructureLodMesher.clear();
+        StructureGreedyMesher.clear();
+        StructureInstancer.clear();
+        GuidebookLevelRenderer.onModelsReloaded();
+    }
+}
@@ -1,8 +1,12 @@
 package com.hollingsworth.schematic.mixin;
 
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Vec3i;
+import net.minecraft.world.level.Level;
 import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplate;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.gen.Accessor;
+import org.spongepowered.asm.mixin.gen.Invoker;
 
 import java.util.List;
 
@@ -10,4 +14,22 @@ import java.util.List;
 public interface StructureTemplateAccessor {
     @Accessor
     List<StructureTemplate.Palette> getPalettes();
+
+    @Accessor
+    void setSize(Vec3i size);
+
+    @Invoker
+    void callFillEntityList(Level level, BlockPos startPos, BlockPos endPos);
+
+    @Invoker
+    static void callAddToLists(StructureTemplate.StructureBlockInfo blockInfo, List<StructureTemplate.StructureBlockInfo> normalBlocks,
+                               List<StructureTemplate.StructureBlockInfo> blocksWithNbt, List<StructureTemplate.StructureBlockInfo> blocksWithSpecialShape) {
+        throw new AssertionError();
+    }
+
+    @Invoker
+    static List<StructureTemplate.StructureBlockInfo> callBuildInfoList(List<StructureTemplate.StructureBlockInfo> normalBlocks,
+                                                                        List<StructureTemplate.StructureBlockInfo> blocksWithNbt, List<StructureTemplate.StructureBlockInfo> blocksWithSpecialShape) {
+        throw new AssertionError();
+    }
 }
@@ -0,0 +1,18 @@
+package com.hollingsworth.schematic.mixin;
+
+import com.mojang.blaze3d.vertex.VertexBuffer;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+@Mixin(VertexBuffer.class)
+public interface VertexBufferAccessor {
+    @Accessor
+    int getIndexCount();
+
+    @Accessor
+    VertexFormat.IndexType getIndexType();
+
+    @Accessor
+    VertexFormat.Mode getMode();
+}
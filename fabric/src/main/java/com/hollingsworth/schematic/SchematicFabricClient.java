@@ -1,9 +1,13 @@
 package com.hollingsworth.schematic;
 
 import com.hollingsworth.schematic.client.ClientData;
+import com.hollingsworth.schematic.client.renderer.StructureGreedyMesher;
+import com.hollingsworth.schematic.client.renderer.StructureInstancer;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
 import net.fabricmc.api.ClientModInitializer;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
 import net.fabricmc.fabric.api.client.keybinding.v1.KeyBindingHelper;
+import net.fabricmc.fabric.api.client.rendering.v1.CoreShaderRegistrationCallback;
 import net.fabricmc.fabric.api.client.rendering.v1.HudRenderCallback;
 import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderEvents;
 import net.minecraft.client.Minecraft;
@@ -24,6 +28,7 @@ public class SchematicFabricClient implements ClientModInitializer {
             if(Minecraft.getInstance().options.keyUse.isDown()){
                 ClientData.rightClickEvent();
             }
+            ClientData.clientTick();
         });
 
         WorldRenderEvents.AFTER_TRANSLUCENT.register((context) -> {
@@ -31,6 +36,11 @@ public class SchematicFabricClient implements ClientModInitializer {
             ClientData.renderAfterSky(context.matrixStack());
         });
 
+        CoreShaderRegistrationCallback.EVENT.register(context -> {
+            context.register(StructureInstancer.SHADER_ID, DefaultVertexFormat.BLOCK, shader -> StructureInstancer.instancedShader = shader);
+            context.register(StructureGreedyMesher.SHADER_ID, StructureGreedyMesher.FORMAT, shader -> StructureGreedyMesher.greedyShader = shader);
+        });
+
         HudRenderCallback.EVENT.register((matrixStack, tickDelta) -> {
             ClientData.renderGUIOverlayEvent(matrixStack, Minecraft.getInstance().getWindow());
         });
@@ -1,11 +1,18 @@
 package com.hollingsworth.schematic.client;
 
 import com.hollingsworth.schematic.Constants;
+import com.hollingsworth.schematic.client.renderer.StructureGreedyMesher;
+import com.hollingsworth.schematic.client.renderer.StructureInstancer;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
+import net.minecraft.client.renderer.ShaderInstance;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.client.event.RegisterKeyMappingsEvent;
+import net.minecraftforge.client.event.RegisterShadersEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
 
+import java.io.IOException;
+
 @Mod.EventBusSubscriber(value = Dist.CLIENT, modid = Constants.MOD_ID, bus = Mod.EventBusSubscriber.Bus.MOD)
 public class ModBusClientEvent {
 
@@ -15,5 +22,13 @@ public class ModBusClientEvent {
             event.register(keyMapping.mapping());
         }
     }
+
+    @SubscribeEvent
+    public static void registerShaders(RegisterShadersEvent event) throws IOException {
+        event.registerShader(new ShaderInstance(event.getResourceProvider(), StructureInstancer.SHADER_ID, DefaultVertexFormat.BLOCK),
+                shader -> StructureInstancer.instancedShader = shader);
+        event.registerShader(new ShaderInstance(event.getResourceProvider(), StructureGreedyMesher.SHADER_ID, StructureGreedyMesher.FORMAT),
+                shader -> StructureGreedyMesher.greedyShader = shader);
+    }
 }
 